@@ -0,0 +1,134 @@
+package ca.mcgill.ecse211.benchmark;
+
+import ca.mcgill.ecse211.model.ArcTrajectory;
+import ca.mcgill.ecse211.model.MotionProfile;
+import ca.mcgill.ecse211.model.Navigation;
+import ca.mcgill.ecse211.model.Robot;
+
+/**
+ * Estimates the time the travelTo() moves of a mission take with and without arc travel. The
+ * routes are the travelTo() sequences of the search zone sweep and of trips through the tunnel.
+ * Each arc plan is also checked to end on its destination.
+ * <p>
+ * Times come from the motion profiles used by Navigation, plus the short sleep before each
+ * motion.
+ *
+ * @author Carlo D'Angelo
+ */
+public class ArcTravelBenchmark {
+
+  // Same values as in Navigation
+  private static final double ARC_RADIUS = 15;
+  private static final double MAX_ARC_TURN = 45;
+
+  private static final double MOTION_START = 0.005; // s, odometer sleep before each motion
+
+  private static final double TILE_SIZE = Navigation.TILE_SIZE;
+
+  /**
+   * Routes as a start pose {x, y, theta} (in tiles and degrees) followed by travelTo()
+   * destinations (in tiles). Localization offsets are included as starting points a few cm off
+   * the grid point.
+   */
+  private static final double[][][] ROUTES = {
+      { // search zone sweep from its lower left corner, zone (5,5)-(8,8)
+          {5, 5, 0}, {5, 6}, {5, 7}, {5, 8}, {6, 8}, {7, 8}, {8, 8}, {8, 7}, {8, 6}, {8, 5},
+          {7, 5}, {6, 5}, {5, 5}},
+      { // home corner to a horizontal tunnel, through it, to the search zone
+          {1, 1, 0}, {3, 2}, {5, 2}, {8, 4}, {6, 5}},
+      { // back home from the search zone
+          {8, 8, 225}, {6, 3}, {3, 2}, {1, 1}},
+      { // diagonal hops between localization points
+          {2, 1, 0}, {3, 3}, {5, 4}, {6, 6}, {8, 7}, {9, 9}},
+      { // travelTo() done by lightLocalize() right after the first correction
+          {1 - 0.25, 1 - 0.25, 0}, {1, 1}},
+      { // a can search with the robot already facing its next points
+          {2, 2, 45}, {3, 3}, {4, 4}, {5, 4}, {6, 5}},
+  };
+
+  /**
+   * Runs the estimate and prints the results.
+   *
+   * @param args unused
+   */
+  public static void main(String[] args) {
+    ArcTrajectory arc = new ArcTrajectory(ARC_RADIUS);
+    double totalInPlace = 0, totalArc = 0, maxMiss = 0;
+    int arcs = 0, moves = 0;
+
+    for (int r = 0; r < ROUTES.length; r++) {
+      double[][] route = ROUTES[r];
+      double x = route[0][0] * TILE_SIZE, y = route[0][1] * TILE_SIZE, theta = route[0][2];
+      double inPlace = 0, arcTime = 0;
+
+      for (int i = 1; i < route.length; i++) {
+        double deltaX = route[i][0] * TILE_SIZE - x;
+        double deltaY = route[i][1] * TILE_SIZE - y;
+        double minAng = Math.toDegrees(Math.atan2(deltaX, deltaY)) - theta;
+        if (minAng < 0 && (Math.abs(minAng) >= 180)) {
+          minAng += 360;
+        } else if (minAng > 0 && (Math.abs(minAng) >= 180)) {
+          minAng -= 360;
+        }
+        double distance = Math.hypot(deltaX, deltaY);
+        double straightMove = turnTime(minAng) + driveTime(distance);
+        inPlace += straightMove;
+        moves++;
+
+        double heading = Math.toRadians(theta);
+        double ahead = deltaX * Math.sin(heading) + deltaY * Math.cos(heading);
+        double right = deltaX * Math.cos(heading) - deltaY * Math.sin(heading);
+        if (Math.abs(minAng) <= MAX_ARC_TURN && arc.plan(right, ahead)
+            && arc.getAngle() != 0) {
+          arcTime += arcTime(arc.getArcLength()) + driveTime(arc.getStraight())
+              + turnTime(minAng - arc.getAngle());
+          arcs++;
+          maxMiss = Math.max(maxMiss, miss(arc, right, ahead));
+        } else {
+          arcTime += straightMove;
+        }
+
+        x += deltaX;
+        y += deltaY;
+        theta = (theta + minAng + 360) % 360;
+      }
+      System.out.println(String.format("route %d: %6.2f s in place, %6.2f s with arcs", r,
+          inPlace, arcTime));
+      totalInPlace += inPlace;
+      totalArc += arcTime;
+    }
+
+    System.out.println(String.format("total  : %6.2f s in place, %6.2f s with arcs (%.1f%%)",
+        totalInPlace, totalArc, 100 * (totalArc - totalInPlace) / totalInPlace));
+    System.out.println(arcs + " of " + moves + " moves made with an arc, max miss "
+        + String.format("%.4f cm", maxMiss));
+  }
+
+  /**
+   * Distance between the end of a planned arc and straight line and the destination.
+   */
+  private static double miss(ArcTrajectory arc, double right, double ahead) {
+    double angle = Math.toRadians(Math.abs(arc.getAngle()));
+    double side = arc.getRadius() * (1 - Math.cos(angle)) + arc.getStraight() * Math.sin(angle);
+    double forward = arc.getRadius() * Math.sin(angle) + arc.getStraight() * Math.cos(angle);
+    return Math.hypot(Math.abs(right) - side, ahead - forward);
+  }
+
+  private static double turnTime(double angle) {
+    return MOTION_START
+        + MotionProfile.TURN.duration(Navigation.convertAngle(Robot.WHEEL_RAD, Robot.TRACK, angle));
+  }
+
+  private static double driveTime(double distance) {
+    return MOTION_START
+        + MotionProfile.DRIVE.duration(Navigation.convertDistance(Robot.WHEEL_RAD, distance));
+  }
+
+  private static double arcTime(double length) {
+    // the outer wheel follows the profile
+    double outer = length * (ARC_RADIUS + Robot.TRACK / 2) / ARC_RADIUS;
+    return MOTION_START
+        + MotionProfile.DRIVE.duration(Navigation.convertDistance(Robot.WHEEL_RAD, outer));
+  }
+
+}
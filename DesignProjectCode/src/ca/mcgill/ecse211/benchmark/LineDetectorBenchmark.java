@@ -0,0 +1,163 @@
+package ca.mcgill.ecse211.benchmark;
+
+import java.util.Random;
+
+import ca.mcgill.ecse211.model.LineDetector;
+import ca.mcgill.ecse211.model.Navigation;
+import ca.mcgill.ecse211.model.Robot;
+
+/**
+ * Measures how well the grid lines are timed during the light localization sweep, on simulated
+ * readings of the light sensor: the LineDetector at the constant LINE_SCAN_SPEED against the
+ * first reading 20% off the first one of the sweep (as in LightLocalizer.lightLocalize()) at
+ * ROTATION_SPEED.
+ * <p>
+ * The robot is put at a random position up to 6 cm below and to the left of the localization point,
+ * where the sensor meets the four lines in the order the localization expects, and spins in place;
+ * its sensor, LIGHT_LOC_DISTANCE behind the wheels, sees the grid lines blurred by its spot, with
+ * gaussian noise, every LIGHT_PERIOD ms. The error is the difference between the heading at the
+ * detection and the heading at which the sensor is over the middle of the line.
+ *
+ * @author Carlo D'Angelo
+ */
+public class LineDetectorBenchmark {
+
+  private static final int RUNS = 500;
+
+  // Light localization (see LightLocalizer)
+  private static final double LIGHT_LOC_DISTANCE = 10.2; // cm
+  private static final double ROTATION_SPEED = 200; // wheel degrees/second
+  private static final double LINE_SCAN_SPEED = 300; // wheel degrees/second
+  private static final double LIGHT_PERIOD = 0.005; // s
+  private static final double COLOUR_DIFF = 20; // percent
+
+  // Sensor model
+  private static final double LINE_WIDTH = 0.6; // cm
+  private static final double SPOT = 0.4; // cm, standard deviation of the spot of the sensor
+  private static final double FLOOR = 450;
+  private static final double LINE = 150;
+  private static final double NOISE = 6;
+
+  /**
+   * Runs the benchmark and prints the results.
+   *
+   * @param args unused
+   */
+  public static void main(String[] args) {
+    Random random = new Random(211);
+    LineDetector detector = new LineDetector();
+    double[] detectorErrors = new double[3];
+    double[] thresholdErrors = new double[3];
+    int missed = 0;
+
+    for (int run = 0; run < RUNS; run++) {
+      double x = -1 - random.nextDouble() * 5;
+      double y = -1 - random.nextDouble() * 5;
+      double start = 30 + random.nextDouble() * 30;
+
+      // LineDetector at LINE_SCAN_SPEED, every line counts
+      double rate = robotRate(LINE_SCAN_SPEED);
+      detector.reset();
+      long time = 0;
+      int found = 0;
+      for (double heading = start; heading < start + 360; heading += rate * LIGHT_PERIOD) {
+        time += (long) (LIGHT_PERIOD * 1e9);
+        if (detector.add((float) read(random, x, y, heading), time)) {
+          double detected = start + rate * (detector.getLineTime() / 1e9 - LIGHT_PERIOD);
+          add(detectorErrors, Math.IEEEremainder(detected - closestLine(x, y, detected), 360));
+          found++;
+        }
+      }
+      missed += 4 - found;
+
+      // Threshold on the first reading at ROTATION_SPEED, the first line
+      rate = robotRate(ROTATION_SPEED);
+      double first = read(random, x, y, start);
+      for (double heading = start; heading < start + 360; heading += rate * LIGHT_PERIOD) {
+        double sample = read(random, x, y, heading);
+        if (100 * Math.abs(sample - first) / first > COLOUR_DIFF) {
+          add(thresholdErrors, Math.IEEEremainder(heading - closestLine(x, y, heading), 360));
+          break;
+        }
+      }
+    }
+
+    System.out.printf("LineDetector at %.0f deg/s: %d lines missed, bias %.2f deg, sd %.2f deg%n",
+        LINE_SCAN_SPEED, missed, mean(detectorErrors), sd(detectorErrors));
+    System.out.printf("threshold at %.0f deg/s: bias %.2f deg, sd %.2f deg%n", ROTATION_SPEED,
+        mean(thresholdErrors), sd(thresholdErrors));
+  }
+
+  /**
+   * @return rotation speed of the robot (in degrees/second) for a wheel speed
+   */
+  private static double robotRate(double wheelSpeed) {
+    return wheelSpeed * 360 / Navigation.convertAngle(Robot.WHEEL_RAD, Robot.TRACK, 360);
+  }
+
+  /**
+   * Simulated reading of the sensor with the robot at (x, y) near the grid lines x = 0 and y = 0.
+   */
+  private static double read(Random random, double x, double y, double heading) {
+    double sensorX = x - LIGHT_LOC_DISTANCE * Math.sin(Math.toRadians(heading));
+    double sensorY = y - LIGHT_LOC_DISTANCE * Math.cos(Math.toRadians(heading));
+    double cover = Math.max(cover(sensorX), cover(sensorY));
+    return FLOOR + (LINE - FLOOR) * cover + NOISE * random.nextGaussian();
+  }
+
+  /**
+   * @return part of the spot of the sensor over a line through 0, at a distance from it
+   */
+  private static double cover(double distance) {
+    return phi((LINE_WIDTH / 2 - distance) / SPOT) - phi((-LINE_WIDTH / 2 - distance) / SPOT);
+  }
+
+  /**
+   * @return standard normal cumulative distribution (Zelen and Severo approximation)
+   */
+  private static double phi(double z) {
+    double t = 1 / (1 + 0.2316419 * Math.abs(z));
+    double density = Math.exp(-z * z / 2) / Math.sqrt(2 * Math.PI);
+    double tail = density * t * (0.319381530 + t * (-0.356563782 + t * (1.781477937
+        + t * (-1.821255978 + t * 1.330274429))));
+    return z > 0 ? 1 - tail : tail;
+  }
+
+  /**
+   * @return heading (in degrees) at which the sensor is over the middle of a line, closest to a
+   *         given heading
+   */
+  private static double closestLine(double x, double y, double heading) {
+    double[] lines = {Math.toDegrees(Math.asin(x / LIGHT_LOC_DISTANCE)),
+        180 - Math.toDegrees(Math.asin(x / LIGHT_LOC_DISTANCE)),
+        Math.toDegrees(Math.acos(y / LIGHT_LOC_DISTANCE)),
+        -Math.toDegrees(Math.acos(y / LIGHT_LOC_DISTANCE))};
+    double closest = lines[0];
+    for (int i = 1; i < lines.length; i++) {
+      if (Math.abs(Math.IEEEremainder(heading - lines[i], 360))
+          < Math.abs(Math.IEEEremainder(heading - closest, 360))) {
+        closest = lines[i];
+      }
+    }
+    return closest;
+  }
+
+  /**
+   * Adds an error to its sums: count, errors and squares.
+   */
+  private static void add(double[] sums, double error) {
+    sums[0]++;
+    sums[1] += error;
+    sums[2] += error * error;
+  }
+
+  private static double mean(double[] sums) {
+    return sums[1] / sums[0];
+  }
+
+  private static double sd(double[] sums) {
+    double mean = mean(sums);
+    return Math.sqrt(Math.max(0, sums[2] / sums[0] - mean * mean));
+  }
+
+}
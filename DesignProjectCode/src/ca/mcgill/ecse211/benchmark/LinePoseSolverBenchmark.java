@@ -0,0 +1,144 @@
+package ca.mcgill.ecse211.benchmark;
+
+import java.util.Random;
+
+import ca.mcgill.ecse211.model.LinePoseSolver;
+
+/**
+ * Compares the LinePoseSolver with the pose from the first four crossings (as lightLocalize()
+ * computes it) on simulated sweeps of the light localization at the grid intersection (0, 0).
+ * <p>
+ * The robot is put at a random position up to 6 cm below and to the left of the intersection, the
+ * odometer heading is off by up to MAX_HEADING_ERROR, and the crossings are timed with gaussian
+ * noise. The first sweep is clean, misses a line, counts a line twice or takes a mark on the floor
+ * for a line, in turn; a second sweep, when the pose is not accepted as in
+ * LightLocalizer.sweepLocalize(), only sees the mark again. The errors are those of the accepted
+ * poses, and a pose off by more than WRONG counts as wrong.
+ *
+ * @author Carlo D'Angelo
+ */
+public class LinePoseSolverBenchmark {
+
+  private static final int RUNS = 4000;
+  private static final double WRONG = 1.5; // cm
+
+  // Light localization (see LightLocalizer)
+  private static final double LIGHT_LOC_DISTANCE = 10.2; // cm
+  private static final double APPROACH_OFFSET = 5; // cm
+  private static final int LOCALIZATION_ATTEMPTS = 2;
+  private static final double MAX_FIT_RMS = 0.3; // cm
+
+  private static final double NOISE = 0.35; // degrees, standard deviation of a crossing
+  private static final double MAX_HEADING_ERROR = 10; // degrees
+
+  private static final String[] CASES = {"clean", "missed line", "double line", "floor mark"};
+
+  /**
+   * Runs the benchmark and prints the results.
+   *
+   * @param args unused
+   */
+  public static void main(String[] args) {
+    Random random = new Random(211);
+    LinePoseSolver solver = new LinePoseSolver(LIGHT_LOC_DISTANCE, 16);
+    double[] guesses = new double[6];
+    double[] crossings = new double[5];
+    double[][] solverErrors = new double[CASES.length][3];
+    double[][] fourLineErrors = new double[CASES.length][3];
+    int[] accepted = new int[CASES.length];
+    int[] wrong = new int[CASES.length];
+    int[] turns = new int[CASES.length];
+    long nanos = 0;
+
+    for (int run = 0; run < RUNS; run++) {
+      int kind = run % CASES.length;
+      int line = run / CASES.length % 4; // missed or doubled line
+      double x = -1 - random.nextDouble() * 5;
+      double y = -1 - random.nextDouble() * 5;
+      double headingError = (2 * random.nextDouble() - 1) * MAX_HEADING_ERROR;
+
+      // true headings of the crossings, in the order of the sweep from 45 degrees
+      double alpha = Math.toDegrees(Math.asin(-x / LIGHT_LOC_DISTANCE));
+      double beta = Math.toDegrees(Math.asin(-y / LIGHT_LOC_DISTANCE));
+      double[] lines = {90 + beta, 180 + alpha, 270 - beta, 360 - alpha};
+      int markAfter = line % 3; // a mark between two lines
+      double mark = lines[markAfter] + 20
+          + random.nextDouble() * (lines[markAfter + 1] - lines[markAfter] - 40);
+
+      solver.reset();
+      boolean ok = false;
+      int attempt = 0;
+      while (!ok && attempt < LOCALIZATION_ATTEMPTS) {
+        int first = solver.getCount();
+        int count = 0;
+        for (int i = 0; i < 4; i++) {
+          if (attempt == 0 && kind == 1 && i == line) {
+            continue;
+          }
+          crossings[count++] = lines[i];
+          if (attempt == 0 && kind == 2 && i == line) {
+            crossings[count++] = lines[i] + 1;
+          }
+          if (kind == 3 && i == markAfter) {
+            crossings[count++] = mark;
+          }
+        }
+        for (int i = 0; i < count; i++) {
+          double heading = crossings[i] - headingError + NOISE * random.nextGaussian();
+          solver.addCrossing((heading % 360 + 360) % 360);
+        }
+        attempt++;
+
+        long start = System.nanoTime();
+        int guessCount = solver.fourLineGuess(first, 0, 0, guesses, 0) ? 1 : 0;
+        if (attempt == 1 && guessCount == 1) {
+          add(fourLineErrors[kind], guesses[0] - x, guesses[1] - y, guesses[2] - headingError);
+        }
+        guesses[3 * guessCount] = -APPROACH_OFFSET;
+        guesses[3 * guessCount + 1] = -APPROACH_OFFSET;
+        guesses[3 * guessCount + 2] = 0;
+        ok = solver.solve(guesses, guessCount + 1) && solver.isReliable()
+            && solver.getRms() <= MAX_FIT_RMS;
+        nanos += System.nanoTime() - start;
+      }
+
+      turns[kind] += attempt;
+      if (ok) {
+        accepted[kind]++;
+        add(solverErrors[kind], solver.getX() - x, solver.getY() - y,
+            solver.getOffset() - headingError);
+        if (Math.hypot(solver.getX() - x, solver.getY() - y) > WRONG) {
+          wrong[kind]++;
+        }
+      }
+    }
+
+    int perCase = RUNS / CASES.length;
+    System.out.printf("solver: %.3f ms per localization%n", nanos / 1e6 / RUNS);
+    for (int kind = 0; kind < CASES.length; kind++) {
+      System.out.printf("%-12s %.2f turns, %5.1f%% accepted (%d wrong), rms %5.2f cm %5.2f deg"
+          + " | four lines: rms %5.2f cm %5.2f deg%n", CASES[kind],
+          (double) turns[kind] / perCase, 100.0 * accepted[kind] / perCase, wrong[kind],
+          rms(solverErrors[kind], 0), rms(solverErrors[kind], 1),
+          rms(fourLineErrors[kind], 0), rms(fourLineErrors[kind], 1));
+    }
+  }
+
+  /**
+   * Adds the errors of a pose to their sums: count, squared position error, squared heading error.
+   */
+  private static void add(double[] sums, double errorX, double errorY, double errorHeading) {
+    errorHeading = Math.IEEEremainder(errorHeading, 360);
+    sums[0]++;
+    sums[1] += errorX * errorX + errorY * errorY;
+    sums[2] += errorHeading * errorHeading;
+  }
+
+  /**
+   * @return root mean square of the position (0) or heading (1) errors, NaN without any
+   */
+  private static double rms(double[] sums, int error) {
+    return Math.sqrt(sums[1 + error] / sums[0]);
+  }
+
+}
@@ -0,0 +1,107 @@
+package ca.mcgill.ecse211.benchmark;
+
+import ca.mcgill.ecse211.model.OdometerData;
+import ca.mcgill.ecse211.model.OdometerExceptions;
+
+/**
+ * Micro-benchmark of the pose store. It measures the cost of getXYT() and update() on their own,
+ * and then the cost of update() while other threads keep reading the pose, which is what the
+ * odometer thread experiences during the mission. It does not need the brick and can be run on
+ * any JVM.
+ * 
+ * @author Carlo D'Angelo
+ */
+public class OdometerDataBenchmark {
+
+  private static final int WARMUP = 200000;
+  private static final int ITERATIONS = 2000000;
+  private static final int READER_THREADS = 3;
+
+  /**
+   * Sum of the values read, printed at the end so that the reads are not optimized away.
+   */
+  private static double sink;
+
+  private static volatile boolean running;
+
+  /**
+   * Runs the benchmark and prints the results.
+   * 
+   * @param args unused
+   * @throws OdometerExceptions
+   * @throws InterruptedException
+   */
+  public static void main(String[] args) throws OdometerExceptions, InterruptedException {
+    final OdometerData odoData = OdometerData.getOdometerData();
+    odoData.setXYT(0, 0, 0);
+
+    timeReads(odoData, WARMUP);
+    timeUpdates(odoData, WARMUP);
+
+    System.out.println("getXYT()                 : " + format(timeReads(odoData, ITERATIONS)));
+    System.out.println("update()                 : " + format(timeUpdates(odoData, ITERATIONS)));
+
+    running = true;
+    Thread[] readers = new Thread[READER_THREADS];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new Thread(new Runnable() {
+        public void run() {
+          double local = 0;
+          while (running) {
+            local += odoData.getXYT()[2];
+          }
+          sink += local;
+        }
+      });
+      readers[i].setDaemon(true);
+      readers[i].start();
+    }
+    System.out.println("update() with " + READER_THREADS + " readers: "
+        + format(timeUpdates(odoData, ITERATIONS / 10)));
+    running = false;
+    for (int i = 0; i < readers.length; i++) {
+      readers[i].join();
+    }
+
+    System.out.println("(checksum " + sink + ")");
+  }
+
+  /**
+   * Times successive calls to getXYT().
+   * 
+   * @param odoData the pose store
+   * @param iterations number of calls
+   * @return average cost of a call in nanoseconds
+   */
+  private static double timeReads(OdometerData odoData, int iterations) {
+    double local = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      local += odoData.getXYT()[0];
+    }
+    long end = System.nanoTime();
+    sink += local;
+    return (end - start) / (double) iterations;
+  }
+
+  /**
+   * Times successive calls to update().
+   * 
+   * @param odoData the pose store
+   * @param iterations number of calls
+   * @return average cost of a call in nanoseconds
+   */
+  private static double timeUpdates(OdometerData odoData, int iterations) {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      odoData.update(0.001, 0.001, 0.01);
+    }
+    long end = System.nanoTime();
+    return (end - start) / (double) iterations;
+  }
+
+  private static String format(double nanos) {
+    return String.format("%8.1f ns/op", nanos);
+  }
+
+}
@@ -0,0 +1,118 @@
+package ca.mcgill.ecse211.benchmark;
+
+import ca.mcgill.ecse211.model.FixedPointOdometry;
+import ca.mcgill.ecse211.model.FloatingPointOdometry;
+import ca.mcgill.ecse211.model.OdometerData;
+import ca.mcgill.ecse211.model.OdometryBackend;
+import ca.mcgill.ecse211.model.Robot;
+
+/**
+ * Compares the two odometry backends. The fixed point backend is first validated against the
+ * floating point one by feeding both the same tacho counts of a mission-like run (straight drives,
+ * turns in place and arcs at 100 Hz). Then the number of updates each backend performs per second
+ * is measured. Meant to be run on the brick, whose processor has no floating point unit, but runs
+ * on any JVM.
+ * 
+ * @author Carlo D'Angelo
+ */
+public class OdometryBackendBenchmark {
+
+  private static final int ITERATIONS = 1000000;
+
+  /**
+   * Runs the validation and the benchmark and prints the results.
+   * 
+   * @param args unused
+   */
+  public static void main(String[] args) {
+    OdometerData floatingData = new OdometerData();
+    OdometerData fixedData = new OdometerData();
+    OdometryBackend floating =
+        new FloatingPointOdometry(floatingData, Robot.WHEEL_RAD, Robot.TRACK);
+    OdometryBackend fixed = new FixedPointOdometry(fixedData, Robot.WHEEL_RAD, Robot.TRACK);
+
+    int[][] run = missionRun();
+    double[][] reference = replay(floatingData, floating, run);
+    double[][] result = replay(fixedData, fixed, run);
+
+    double maxPosition = 0, maxHeading = 0;
+    for (int i = 0; i < run.length; i++) {
+      maxPosition = Math.max(maxPosition,
+          Math.hypot(result[i][0] - reference[i][0], result[i][1] - reference[i][1]));
+      double heading = Math.abs(result[i][2] - reference[i][2]);
+      maxHeading = Math.max(maxHeading, Math.min(heading, 360 - heading));
+    }
+    double[] end = reference[run.length - 1];
+    System.out.println("Validation over " + run.length + " updates, ending at ("
+        + String.format("%.1f, %.1f, %.1f", end[0], end[1], end[2]) + ")");
+    System.out.println(String.format("  max position difference: %.5f cm", maxPosition));
+    System.out.println(String.format("  max heading difference : %.5f deg", maxHeading));
+
+    time(floatingData, floating, ITERATIONS / 10); // warm up
+    time(fixedData, fixed, ITERATIONS / 10);
+    System.out.println(String.format("floating point: %10.0f updates/s", time(floatingData,
+        floating, ITERATIONS)));
+    System.out.println(String.format("fixed point   : %10.0f updates/s", time(fixedData, fixed,
+        ITERATIONS)));
+  }
+
+  /**
+   * Builds the tacho count changes of a run made of straight drives, turns in place and arcs, as
+   * seen by an odometer updating at 100 Hz.
+   * 
+   * @return one {left, right} pair of tacho count changes per update
+   */
+  private static int[][] missionRun() {
+    int[][] run = new int[6000][];
+    for (int i = 0; i < run.length; i++) {
+      int phase = (i / 500) % 4;
+      if (phase == 0) { // forward at 250 deg/s
+        run[i] = new int[] {2 + (i % 2), 3 - (i % 2)};
+      } else if (phase == 1) { // turn in place at 100 deg/s
+        run[i] = new int[] {1, -1};
+      } else if (phase == 2) { // arc
+        run[i] = new int[] {4, 2 + (i % 3 == 0 ? 1 : 0)};
+      } else { // turn back the other way
+        run[i] = new int[] {-1, 1};
+      }
+    }
+    return run;
+  }
+
+  /**
+   * Feeds a run to a backend, starting from the origin.
+   * 
+   * @param odoData odometer data the backend writes to
+   * @param backend backend to run
+   * @param run tacho count changes of each update
+   * @return the pose after each update
+   */
+  private static double[][] replay(OdometerData odoData, OdometryBackend backend, int[][] run) {
+    double[][] poses = new double[run.length][];
+    odoData.setXYT(0, 0, 0);
+    for (int i = 0; i < run.length; i++) {
+      backend.integrate(run[i][0], run[i][1]);
+      poses[i] = odoData.getXYT();
+    }
+    return poses;
+  }
+
+  /**
+   * Times successive updates of a backend.
+   * 
+   * @param odoData odometer data the backend writes to
+   * @param backend backend to time
+   * @param iterations number of updates
+   * @return updates per second
+   */
+  private static double time(OdometerData odoData, OdometryBackend backend, int iterations) {
+    odoData.setXYT(0, 0, 0);
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      backend.integrate(3 + (i & 1), 2);
+    }
+    long end = System.nanoTime();
+    return iterations / ((end - start) / 1e9);
+  }
+
+}
@@ -0,0 +1,103 @@
+package ca.mcgill.ecse211.benchmark;
+
+import ca.mcgill.ecse211.model.Route;
+import ca.mcgill.ecse211.model.RoutePlanner;
+
+/**
+ * Times the planning of the route to the search zone and compares it to the scripted route of
+ * SearchZoneLocator, from each starting corner.
+ * <p>
+ * The layout is the same for every corner, mirrored: home zone (0,0)-(4,3), tunnel (4,1)-(6,2),
+ * island (6,1)-(14,8) and search zone (9,4)-(12,7), for corner 0. The scripted routes are the
+ * polylines of the travelTo() and driveForward() moves of SearchZoneLocator for that layout.
+ *
+ * @author Carlo D'Angelo
+ */
+public class RoutePlannerBenchmark {
+
+  private static final int RUNS = 200;
+
+  // Layout for corner 0 (llx, lly, urx, ury)
+  private static final int[] HOME = {0, 0, 4, 3};
+  private static final int[] TUNNEL = {4, 1, 6, 2};
+  private static final int[] ISLAND = {6, 1, 14, 8};
+  private static final int[] SEARCH_ZONE = {9, 4, 12, 7};
+
+  // Scripted routes for each corner (in tiles)
+  private static final double[][][] SCRIPTED = {
+      {{1, 1}, {3, 1}, {3, 1.5}, {7, 1.5}, {7, 2}, {9, 4}},
+      {{14, 1}, {12, 1}, {12, 1.5}, {8, 1.5}, {8, 2}, {6, 7}},
+      {{14, 8}, {12, 8}, {12, 7.5}, {8, 7.5}, {8, 7}, {6, 5}},
+      {{1, 8}, {3, 8}, {3, 7.5}, {7, 7.5}, {7, 7}, {9, 2}}};
+
+  /**
+   * Runs the benchmark and prints the results.
+   *
+   * @param args unused
+   */
+  public static void main(String[] args) {
+    for (int corner = 0; corner < 4; corner++) {
+      boolean mirrorX = corner == 1 || corner == 2;
+      boolean mirrorY = corner == 2 || corner == 3;
+
+      long start = System.nanoTime();
+      Route route = null;
+      for (int run = 0; run < RUNS; run++) {
+        RoutePlanner planner = new RoutePlanner(RoutePlanner.FIELD_WIDTH, RoutePlanner.FIELD_HEIGHT);
+        int[] home = mirror(HOME, mirrorX, mirrorY);
+        planner.setHomeZone(home[0], home[1], home[2], home[3], corner);
+        int[] island = mirror(ISLAND, mirrorX, mirrorY);
+        planner.addLand(island[0], island[1], island[2], island[3]);
+        int[] tunnel = mirror(TUNNEL, mirrorX, mirrorY);
+        planner.setTunnel(tunnel[0], tunnel[1], tunnel[2], tunnel[3]);
+        int[] zone = mirror(SEARCH_ZONE, mirrorX, mirrorY);
+        planner.setSearchZone(zone[0], zone[1], zone[2], zone[3]);
+        route = planner.planToSearchZone();
+      }
+      double millis = (System.nanoTime() - start) / 1e6 / RUNS;
+
+      if (route == null) {
+        System.out.println("corner " + corner + ": no route");
+        continue;
+      }
+      int localizations = 0;
+      for (int i = 0; i < route.size(); i++) {
+        if (route.isLocalization(i)) {
+          localizations++;
+        }
+      }
+      System.out.println("corner " + corner + ": " + route);
+      System.out.printf("  planned in %.2f ms, %.2f tiles, %.0f deg of turns, %d localizations%n",
+          millis, route.getLength(), route.getTurning(), localizations);
+      System.out.printf("  scripted: %.2f tiles%n", scriptedLength(SCRIPTED[corner]));
+    }
+  }
+
+  /**
+   * Mirrors a rectangle of the layout of corner 0 for another corner.
+   */
+  private static int[] mirror(int[] rectangle, boolean mirrorX, boolean mirrorY) {
+    int[] mirrored = rectangle.clone();
+    if (mirrorX) {
+      mirrored[0] = RoutePlanner.FIELD_WIDTH - rectangle[2];
+      mirrored[2] = RoutePlanner.FIELD_WIDTH - rectangle[0];
+    }
+    if (mirrorY) {
+      mirrored[1] = RoutePlanner.FIELD_HEIGHT - rectangle[3];
+      mirrored[3] = RoutePlanner.FIELD_HEIGHT - rectangle[1];
+    }
+    return mirrored;
+  }
+
+  /**
+   * Length of a scripted route (in tiles).
+   */
+  private static double scriptedLength(double[][] scripted) {
+    double length = 0;
+    for (int i = 1; i < scripted.length; i++) {
+      length += Math.hypot(scripted[i][0] - scripted[i - 1][0], scripted[i][1] - scripted[i - 1][1]);
+    }
+    return length;
+  }
+
+}
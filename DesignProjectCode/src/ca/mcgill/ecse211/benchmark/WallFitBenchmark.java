@@ -0,0 +1,116 @@
+package ca.mcgill.ecse211.benchmark;
+
+import java.util.Random;
+
+import ca.mcgill.ecse211.model.Navigation;
+import ca.mcgill.ecse211.model.Robot;
+import ca.mcgill.ecse211.model.WallFit;
+
+/**
+ * Measures the accuracy and the time of the wall fit of UltrasonicLocalizer.wallFit() on simulated
+ * scans, counting the fits it would reject as failures: the robot is put at a random pose in the
+ * corner tile, and spins once at the speed of the ultrasonic localization while the sensor is read
+ * every US_PERIOD ms.
+ * <p>
+ * The simulated sensor reads the distance to the closest wall with gaussian noise, sees no echo
+ * farther than ECHO_CONE from the normal of a wall, and now and then reads a spurious echo.
+ *
+ * @author Carlo D'Angelo
+ */
+public class WallFitBenchmark {
+
+  private static final int RUNS = 1000;
+  private static final double TILE_SIZE = Navigation.TILE_SIZE;
+
+  // Ultrasonic localization (see UltrasonicLocalizer)
+  private static final double ROTATION_SPEED = 150; // wheel degrees/second
+  private static final double US_OFFSET = 7.0; // cm
+  private static final double US_PERIOD = 0.02; // s
+  private static final double MAX_FIT_RMS = 2.0; // cm
+  private static final double MIN_FIT_FRACTION = 0.2;
+
+  // Sensor model
+  private static final double NOISE = 0.7; // cm, standard deviation
+  private static final double ECHO_CONE = 40; // degrees
+  private static final double SPURIOUS = 0.03; // probability of a random reading
+  private static final float NO_ECHO = 255; // cm
+
+  /**
+   * Runs the benchmark and prints the results.
+   *
+   * @param args unused
+   */
+  public static void main(String[] args) {
+    Random random = new Random(211);
+    double turn = Navigation.convertAngle(Robot.WHEEL_RAD, Robot.TRACK, 360) / ROTATION_SPEED;
+    int samples = (int) (turn / US_PERIOD);
+    float[] headings = new float[samples];
+    float[] distances = new float[samples];
+    WallFit fit = new WallFit();
+
+    int failures = 0;
+    double headingSquares = 0, positionSquares = 0, worstHeading = 0, worstPosition = 0;
+    long nanos = 0;
+    for (int run = 0; run < RUNS; run++) {
+      double x = -TILE_SIZE + 10 + random.nextDouble() * (TILE_SIZE - 20);
+      double y = -TILE_SIZE + 10 + random.nextDouble() * (TILE_SIZE - 20);
+      double theta = random.nextDouble() * 360;
+      double odometerStart = random.nextDouble() * 360; // unknown heading of the odometer
+
+      for (int i = 0; i < samples; i++) {
+        double turned = 360.0 * i / samples;
+        headings[i] = (float) ((odometerStart + turned) % 360);
+        distances[i] = (float) (read(random, x, y, theta + turned) + US_OFFSET);
+      }
+
+      long start = System.nanoTime();
+      boolean fitted = fit.fit(headings, distances, samples);
+      nanos += System.nanoTime() - start;
+      if (!fitted || fit.getRms() > MAX_FIT_RMS || fit.getPoints() < MIN_FIT_FRACTION * samples) {
+        failures++;
+        continue;
+      }
+      // the odometer read odometerStart + 360 at the end, the robot faces theta
+      double headingError = Math.IEEEremainder(odometerStart + 180 - fit.getSouthHeading() - theta,
+          360);
+      double positionError = Math.hypot(fit.getWestDistance() - TILE_SIZE - x,
+          fit.getSouthDistance() - TILE_SIZE - y);
+      headingSquares += headingError * headingError;
+      positionSquares += positionError * positionError;
+      worstHeading = Math.max(worstHeading, Math.abs(headingError));
+      worstPosition = Math.max(worstPosition, positionError);
+    }
+
+    int fitted = RUNS - failures;
+    System.out.printf("scan: %.1f s, %d readings%n", turn, samples);
+    System.out.printf("fitted %d of %d scans in %.3f ms each%n", fitted, RUNS,
+        nanos / 1e6 / RUNS);
+    System.out.printf("heading error: rms %.2f deg, worst %.2f deg%n",
+        Math.sqrt(headingSquares / fitted), worstHeading);
+    System.out.printf("position error: rms %.2f cm, worst %.2f cm%n",
+        Math.sqrt(positionSquares / fitted), worstPosition);
+  }
+
+  /**
+   * Simulated reading (in cm) of the sensor of a robot at (x, y) in the corner tile, whose walls
+   * are at x = -TILE_SIZE and y = -TILE_SIZE.
+   */
+  private static double read(Random random, double x, double y, double heading) {
+    if (random.nextDouble() < SPURIOUS) {
+      return random.nextDouble() * NO_ECHO;
+    }
+    double sin = Math.sin(Math.toRadians(heading));
+    double cos = Math.cos(Math.toRadians(heading));
+    double west = sin < 0 ? (x + TILE_SIZE) / -sin : Double.POSITIVE_INFINITY;
+    double south = cos < 0 ? (y + TILE_SIZE) / -cos : Double.POSITIVE_INFINITY;
+    // angle between the beam and the normal of the wall it hits
+    double incidence = west < south ? Math.toDegrees(Math.acos(-sin))
+        : Math.toDegrees(Math.acos(-cos));
+    double distance = Math.min(west, south);
+    if (Double.isInfinite(distance) || incidence > ECHO_CONE) {
+      return NO_ECHO;
+    }
+    return distance - US_OFFSET + NOISE * random.nextGaussian();
+  }
+
+}
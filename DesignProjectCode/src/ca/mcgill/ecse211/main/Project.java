@@ -23,12 +23,19 @@ import ca.mcgill.ecse211.model.CanLocator;
 import ca.mcgill.ecse211.model.Clamp;
 import ca.mcgill.ecse211.model.ColorClassification;
 import ca.mcgill.ecse211.model.LightLocalizer;
+import ca.mcgill.ecse211.model.MotionCostModel;
+import ca.mcgill.ecse211.model.MotorPair;
 import ca.mcgill.ecse211.model.Navigation;
 import ca.mcgill.ecse211.model.Odometer;
 import ca.mcgill.ecse211.model.OdometerExceptions;
+import ca.mcgill.ecse211.model.OdometryCorrection;
 import ca.mcgill.ecse211.model.ReturnHome;
 import ca.mcgill.ecse211.model.Robot;
+import ca.mcgill.ecse211.model.RoutePlanner;
+import ca.mcgill.ecse211.model.RouteTable;
 import ca.mcgill.ecse211.model.SearchZoneLocator;
+import ca.mcgill.ecse211.model.SensorSampler;
+import ca.mcgill.ecse211.model.TripLog;
 import ca.mcgill.ecse211.model.UltrasonicLocalizer;
 
 /**
@@ -42,6 +49,7 @@ public class Project {
 	// Motor and Sensor Ports
 	public static final EV3LargeRegulatedMotor LEFT_MOTOR = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("A"));
 	public static final EV3LargeRegulatedMotor RIGHT_MOTOR = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("B"));
+	public static final MotorPair WHEELS = new MotorPair(LEFT_MOTOR, RIGHT_MOTOR);
 	private static final EV3LargeRegulatedMotor SENSOR_MOTOR = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("D"));
 	private static final EV3LargeRegulatedMotor CLAMP_MOTOR = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("C"));
 	private static final TextLCD LCD = LocalEV3.get().getTextLCD();
@@ -55,6 +63,53 @@ public class Project {
 	
 	// Enable/disable printing of debug info from the WiFi class
 	private static final boolean ENABLE_DEBUG_WIFI_PRINT = false;
+	
+	// Correct the odometer with the grid lines crossed while driving straight (see OdometryCorrection)
+	// (off until it is measured on the robot)
+	private static final boolean GRID_LINE_CORRECTION = false;
+	
+	// Turn while driving in travelTo() when the turn is small (see Navigation.setArcTravel())
+	private static final boolean ARC_TRAVEL = false;
+	
+	// Steer straight drives to keep their heading (see Navigation.setHeadingHold())
+	// (off until its gains and stopping distance are measured on the robot)
+	private static final boolean HEADING_HOLD = false;
+	
+	// Turn until the odometer reports the requested angle (see Navigation.setClosedLoopTurns())
+	// (off until LightLocalizer's TURN_ERROR is measured again with closed loop turns)
+	private static final boolean CLOSED_LOOP_TURNS = false;
+	
+	// Plan the routes to the search zone and back home with A* instead of the scripted ones
+	private static final boolean PLANNED_ROUTES = false;
+	
+	// File the planned routes are saved to and loaded from for the same game parameters (null to plan every time)
+	private static final String ROUTE_CACHE_FILE = "routes.bin";
+	
+	// Localize at the start by fitting the corner walls to one ultrasonic turn, which also gives x and y
+	// (see UltrasonicLocalizer.wallFit()), instead of the falling edges
+	private static final boolean WALL_FIT_LOCALIZATION = false;
+	
+	// Find the grid lines with the LineDetector and spin at one speed during light localization
+	// (see LightLocalizer.setLineDetector())
+	private static final boolean LINE_DETECTOR = false;
+	
+	// Smallest time (ms) between two readings of each sensor by its sampler
+	private static final int US_SAMPLE_PERIOD = 20;
+	private static final int LIGHT_SAMPLE_PERIOD = 5;
+	private static final int COLOR_SAMPLE_PERIOD = 10;
+	private static final int TOUCH_SAMPLE_PERIOD = 10;
+	
+	// Number of samples kept by each sensor sampler
+	private static final int SAMPLE_BUFFER_SIZE = 64;
+	
+	// File the odometry corrections are written to after each trip
+	private static final String CORRECTION_LOG_FILE = "corrections.csv";
+	
+	// File the telemetry of each trip is appended to (see TripLog)
+	private static final String TRIP_LOG_FILE = "trips.csv";
+	
+	// File the timings of the motions are loaded from and saved to after each trip (see MotionCostModel)
+	private static final String MOTION_COST_FILE = "motion_costs.csv";
 
 	/**
 	 * Method that starts the program.
@@ -72,50 +127,81 @@ public class Project {
 		Thread odoThread = new Thread(odometer);
 		
 		// Navigation
-		Navigation navigator = new Navigation(LEFT_MOTOR,RIGHT_MOTOR);
+		Navigation navigator = new Navigation(WHEELS);
 
 		// Ultrasonic sensor
 		@SuppressWarnings("resource") // Because we don't bother to close this resource
 		SensorModes usSensor = new EV3UltrasonicSensor(US_PORT);
 		SampleProvider usDistance = usSensor.getMode("Distance");
-		float[] usData = new float[usDistance.sampleSize()];
+		SensorSampler usSampler = new SensorSampler(usDistance, "ultrasonic", US_SAMPLE_PERIOD, SAMPLE_BUFFER_SIZE);
 		
 		// Color Sensor (Localization)
 		@SuppressWarnings("resource") // Because we don't bother to close this resource
 		SensorModes csSensor = new EV3ColorSensor(CS_PORT);
 		SampleProvider csLineDetector = csSensor.getMode("Red");
-		float[] csData = new float[csLineDetector.sampleSize()];
+		SensorSampler lightSampler = new SensorSampler(csLineDetector, "light", LIGHT_SAMPLE_PERIOD, SAMPLE_BUFFER_SIZE);
 		
 		 // Color Sensor (Color Classification)
         @SuppressWarnings("resource") // Because we don't bother to close this resource
         SensorModes clrSensor = new EV3ColorSensor(CS_FRONT_PORT);
         SampleProvider colorId =  clrSensor.getMode("RGB");
-        float[] colorData = new float[colorId.sampleSize()];
+        SensorSampler colorSampler = new SensorSampler(colorId, "color", COLOR_SAMPLE_PERIOD, SAMPLE_BUFFER_SIZE);
         
         // Touch Sensor (Assess Can Weight)
         @SuppressWarnings("resource") // Because we don't bother to close this resource
         SensorModes myTouch = new EV3TouchSensor(TS_PORT);
         SampleProvider myTouchStatus =  myTouch.getMode(0);
-        float[] tsData = new float[colorId.sampleSize()];
+        SensorSampler touchSampler = new SensorSampler(myTouchStatus, "touch", TOUCH_SAMPLE_PERIOD, SAMPLE_BUFFER_SIZE);
+        
+        // Sensor Sampler Threads (one per sensor, the consumers read their latest samples)
+        usSampler.start();
+        lightSampler.start();
+        colorSampler.start();
+        touchSampler.start();
 		
 		// Wifi
         WifiConnection wifi = new WifiConnection(SERVER_IP, TEAM_NUMBER, ENABLE_DEBUG_WIFI_PRINT);
         
         // Color Classification
-        ColorClassification ClrClassify= new ColorClassification(colorData, colorId);
+        ColorClassification ClrClassify= new ColorClassification(colorSampler);
         
         // Assess Can Color
         AssessCanColor assessCanColor = new AssessCanColor(SENSOR_MOTOR, ClrClassify);
         
         // Assess Can Weight
-        AssessCanWeight assessCanWeight = new AssessCanWeight(tsData, myTouchStatus);
+        AssessCanWeight assessCanWeight = new AssessCanWeight(touchSampler);
         
         // Clamp
         Clamp clamp = new Clamp(CLAMP_MOTOR);
         
 		// Localization (Ultrasonic and Light)
-		UltrasonicLocalizer ultrasonicLocalizer = new UltrasonicLocalizer(LEFT_MOTOR, RIGHT_MOTOR, usDistance, usData);
-		LightLocalizer lightLocalizer = new LightLocalizer(LEFT_MOTOR, RIGHT_MOTOR, csLineDetector, csData, navigator);
+		UltrasonicLocalizer ultrasonicLocalizer = new UltrasonicLocalizer(WHEELS, usSampler);
+		LightLocalizer lightLocalizer = new LightLocalizer(WHEELS, lightSampler, navigator);
+		lightLocalizer.setLineDetector(LINE_DETECTOR);
+		
+		// Odometry Correction (grid lines crossed while driving straight)
+		OdometryCorrection odoCorrection = new OdometryCorrection(odometer, lightSampler);
+		Thread odoCorrectionThread = new Thread(odoCorrection);
+		odoCorrectionThread.setDaemon(true);
+		if (GRID_LINE_CORRECTION) {
+			navigator.setOdometryCorrection(odoCorrection);
+		}
+		navigator.setArcTravel(ARC_TRAVEL);
+		navigator.setHeadingHold(HEADING_HOLD);
+		navigator.setClosedLoopTurns(CLOSED_LOOP_TURNS);
+		
+		// Motion Cost Model (calibrated with the timings of the previous runs)
+		MotionCostModel costModel = new MotionCostModel();
+		try {
+			costModel.load(MOTION_COST_FILE);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		costModel.setLineDetector(LINE_DETECTOR);
+		navigator.setCostModel(costModel);
+		
+		// Trip Log
+		TripLog tripLog = new TripLog();
 		
         do {
 			
@@ -147,19 +233,39 @@ public class Project {
 				
 				// Can Locator
 				CanLocator canLocator = new CanLocator(robot, assessCanColor,assessCanWeight, clamp, 
-						usDistance, usData, navigator,lightLocalizer);
+						usSampler, navigator,lightLocalizer);
 				
 				// Return Home
 				ReturnHome returnHome = new ReturnHome(robot, lightLocalizer, clamp, navigator);
 				
+				if (PLANNED_ROUTES) {
+					// plan all the routes once, every trip reuses them
+					RouteTable routeTable = loadRoutes(robot, costModel);
+					searchZonelocator.setRouteTable(routeTable);
+					returnHome.setRouteTable(routeTable);
+				}
+				
 				odoThread.start();
+				if (GRID_LINE_CORRECTION) {
+					odoCorrectionThread.start();
+				}
 
-				ultrasonicLocalizer.fallingEdge();
-
-				lightLocalizer.moveClose();
-				lightLocalizer.lightLocalize(0,0);
+				if (WALL_FIT_LOCALIZATION && ultrasonicLocalizer.wallFit()) {
+					lightLocalizer.moveClose(0, 0);
+				} else {
+					ultrasonicLocalizer.fallingEdge();
+					lightLocalizer.moveClose();
+				}
+				if (!lightLocalizer.lightLocalize(0,0)) {
+					// the robot is at (0,0) facing 0 degrees, close enough to try again
+					navigator.turnTo(45);
+					lightLocalizer.lightLocalize(0,0);
+				}
 				
 				while (true) {
+					navigator.getHeadingController().resetTelemetry();
+					navigator.resetTurnTelemetry();
+					
 					Sound.beep();
 					Sound.pause(100);
 					Sound.beep();
@@ -167,6 +273,7 @@ public class Project {
 					Sound.beep();
 					
 					searchZonelocator.goToSearchZone();
+					tripLog.setSavings(TripLog.SEARCH_ZONE_SAVINGS, navigator.getMotionBuffer());
 					
 					Sound.beep();
 					Sound.pause(100);
@@ -177,6 +284,17 @@ public class Project {
 					canLocator.runLocator();
 				
 					returnHome.goHome();
+					tripLog.setSavings(TripLog.HOME_SAVINGS, navigator.getMotionBuffer());
+					
+					tripLog.setCrossTrack(navigator.getHeadingController());
+					tripLog.setTurnError(navigator);
+					try {
+						odometer.getCorrectionLog().dump(CORRECTION_LOG_FILE);
+						tripLog.append(TRIP_LOG_FILE);
+						costModel.save(MOTION_COST_FILE);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
 				}
 
 			} else { // TESTING
@@ -211,7 +329,7 @@ public class Project {
 				/*
 				// Search Algorithm Test
 				CanLocator canLocator = new CanLocator(robot, assessCanColor,assessCanWeight, clamp, 
-												usDistance, usData, navigator,lightLocalizer);
+												usSampler, navigator,lightLocalizer);
 				canLocator.runLocator();
 				*/
 				
@@ -242,6 +360,7 @@ public class Project {
 				/*
 				// Color Classification Test
 				double counter = 0;
+				float[] colorData = new float[colorSampler.sampleSize()];
 				while(true) {
 					
 					if (ClrClassify.run() !="no object") {	//if there is a can detected
@@ -252,7 +371,7 @@ public class Project {
 				    	LCD.clear();
 				    }
 
-				    colorId.fetchSample(colorData, 0);
+				    colorSampler.getLatest(colorData);
 				    LCD.drawString("R: " + colorData[0], 1, 3);
 			        LCD.drawString("G: " + colorData[1], 1, 4);
 			        LCD.drawString("B: " + colorData[2], 1, 5);
@@ -264,10 +383,51 @@ public class Project {
 				}
 				*/
 				
+				/*
+				// Sensor Sample Rate Test (samples/second each sampler achieves)
+				Sound.pause(2000);
+				LCD.drawString("US:    " + (int) usSampler.getRate(), 0, 0);
+				LCD.drawString("Light: " + (int) lightSampler.getRate(), 0, 1);
+				LCD.drawString("Color: " + (int) colorSampler.getRate(), 0, 2);
+				LCD.drawString("Touch: " + (int) touchSampler.getRate(), 0, 3);
+				*/
+				
 			}
 
 		while (Button.waitForAnyPress() != Button.ID_ESCAPE);
 		System.exit(0);
 	}
 
+	/**
+	 * Method that plans the routes of the game, or loads them from the cache file if they
+	 * were saved for the same game parameters.
+	 * @param robot instance of the Robot class
+	 * @param costModel model to compare the routes by time
+	 * @return the routes of the game
+	 */
+	private static RouteTable loadRoutes(Robot robot, MotionCostModel costModel) {
+		int key = robot.hashParameters();
+		RouteTable routeTable = null;
+		if (ROUTE_CACHE_FILE != null) {
+			try {
+				routeTable = RouteTable.load(ROUTE_CACHE_FILE, key);
+			} catch (IOException e) {
+				e.printStackTrace(); // plan them again
+			}
+		}
+		if (routeTable == null) {
+			RoutePlanner routePlanner = RoutePlanner.forGame(robot);
+			routePlanner.setCostModel(costModel);
+			routeTable = RouteTable.compute(routePlanner, key);
+			if (ROUTE_CACHE_FILE != null) {
+				try {
+					routeTable.save(ROUTE_CACHE_FILE);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return routeTable;
+	}
+
 }
@@ -0,0 +1,111 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Plans a move to a point as an arc of fixed radius followed by a straight line, so that the robot
+ * turns while it drives instead of stopping to turn in place.
+ * <p>
+ * The target is given in the frame of the robot: x to its right and y straight ahead (in cm).
+ * Angles are positive clockwise, like the odometer's heading. This class only does the geometry,
+ * {@link Navigation} drives the motors.
+ *
+ * @author Carlo D'Angelo
+ */
+public class ArcTrajectory {
+
+  private static final double ANGLE_EPSILON = 1e-9;
+
+  private final double radius;
+
+  private double angle; // turn made along the arc (degrees)
+  private double arcLength; // length of the arc, measured at the center of the robot
+  private double straight; // length of the straight line after the arc
+
+  /**
+   * Creates a planner for arcs of the given radius.
+   *
+   * @param radius radius of the arc followed by the center of the robot (in cm), at least half
+   *        the track so that the inner wheel does not have to go backward
+   */
+  public ArcTrajectory(double radius) {
+    this.radius = radius;
+  }
+
+  /**
+   * Plans the arc and straight line that bring the robot to a point. The arc is a right turn if
+   * the point is to the right of the robot, a left turn otherwise.
+   *
+   * @param x distance of the target to the right of the robot (in cm)
+   * @param y distance of the target ahead of the robot (in cm)
+   * @return false if the target is too close to be reached this way (inside the turning circle)
+   */
+  public boolean plan(double x, double y) {
+    boolean left = x < 0;
+    if (left) {
+      x = -x; // mirror, the left turn is the mirror image of the right one
+    }
+
+    // Center of the turn at (radius, 0). After turning by a, the robot is at
+    // (radius - radius*cos(a), radius*sin(a)) heading (sin(a), cos(a)). The straight line from
+    // there goes through the target when (x - radius)*cos(a) - y*sin(a) + radius = 0.
+    double a = x - radius;
+    double b = -y;
+    double rho = Math.hypot(a, b);
+    if (rho < radius) {
+      return false;
+    }
+    double phi = Math.atan2(b, a);
+    double spread = Math.acos(-radius / rho);
+
+    double best = Double.NaN;
+    double bestStraight = 0;
+    for (int side = -1; side <= 1; side += 2) { // the two tangents from the turning circle
+      double candidate = Math.IEEEremainder(phi + side * spread, 2 * Math.PI);
+      if (candidate < -ANGLE_EPSILON) {
+        continue; // would be a left turn
+      }
+      candidate = Math.max(candidate, 0); // rounding when the target is straight ahead
+      double length = a * Math.sin(candidate) + y * Math.cos(candidate);
+      if (length >= 0 && (Double.isNaN(best) || candidate < best)) {
+        best = candidate;
+        bestStraight = length;
+      }
+    }
+    if (Double.isNaN(best)) {
+      return false;
+    }
+
+    angle = Math.toDegrees(left ? -best : best);
+    arcLength = radius * best;
+    straight = bestStraight;
+    return true;
+  }
+
+  /**
+   * @return radius of the arc (in cm)
+   */
+  public double getRadius() {
+    return radius;
+  }
+
+  /**
+   * @return turn made along the planned arc (in degrees, positive clockwise)
+   */
+  public double getAngle() {
+    return angle;
+  }
+
+  /**
+   * @return length of the planned arc at the center of the robot (in cm)
+   */
+  public double getArcLength() {
+    return arcLength;
+  }
+
+  /**
+   * @return length of the straight line after the planned arc (in cm)
+   */
+  public double getStraight() {
+    return straight;
+  }
+
+}
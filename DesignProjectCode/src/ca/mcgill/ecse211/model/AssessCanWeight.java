@@ -1,7 +1,5 @@
 package ca.mcgill.ecse211.model;
 
-import lejos.robotics.SampleProvider;
-
 /**
  * This class allows the robot to correctly identify a can's weight by
  * using the touch sensor. 
@@ -12,17 +10,14 @@ import lejos.robotics.SampleProvider;
 
 public class AssessCanWeight {
 
-	private float[] tsData;
-	private SampleProvider myTouchStatus;
+	private SensorSampler touchSampler;
 	
 	/**
 	 * This is the default constructor of this class.
-	 * @param tsData array in which to store the touch sensor data
-	 * @param myTouchStatus sample provider from which to fetch touch sensor data
+	 * @param touchSampler sampler of the touch sensor
 	 */
-	public AssessCanWeight(float[] tsData, SampleProvider myTouchStatus) {
-		this.tsData = tsData;
-		this.myTouchStatus = myTouchStatus;
+	public AssessCanWeight(SensorSampler touchSampler) {
+		this.touchSampler = touchSampler;
 	}
 	
 	/**
@@ -34,11 +29,10 @@ public class AssessCanWeight {
 	}
 	
 	/**
-	 * This method fetches the data from the touch sensor.
+	 * This method reads the latest data from the touch sensor.
 	 * @return data from the touch sensor
 	 */
 	private float sampleData(){
-		myTouchStatus.fetchSample(tsData, 0);
-		return tsData[0];
+		return touchSampler.getLatest();
 	}
 }
@@ -2,7 +2,6 @@ package ca.mcgill.ecse211.model;
 
 import ca.mcgill.ecse211.main.Project;
 import lejos.hardware.Sound;
-import lejos.robotics.SampleProvider;
 
 
 /**
@@ -23,8 +22,7 @@ public class CanLocator {
 	private AssessCanWeight assessCanWeight;
 	private Clamp clamp;
 	
-	private SampleProvider usDistance;
-	private float[] usData;
+	private FilteredSensor usReader;
 	
 	private final double TILE_SIZE = Navigation.TILE_SIZE;
 	private static final double ANGLE_ERROR = 10.0;
@@ -34,6 +32,17 @@ public class CanLocator {
 	private static final double TEST_ANGLE_FAR = 45.0;
 	private static final double ULTRASONIC_ERROR = 5.0; 
 	private static final double ULTRASONIC_CLOSE = 6.0;
+	
+	/**
+	 * Readings of the ultrasonic sensor the median is taken over while scanning, so that a single
+	 * spurious reading does not cost an approach of a can that is not there.
+	 */
+	private static final int MEDIAN_LENGTH = 5;
+	
+	/**
+	 * Number of "no echo" readings in a row that are ignored.
+	 */
+	private static final int MAX_NO_ECHO = 3;
 	private double canAngle = 0;
 	private double canDistance = 0;
 	private int ENDX = 0, ENDY = 0;
@@ -52,22 +61,21 @@ public class CanLocator {
 	 * @param assessCanColor instance of the AssessCanColor class
 	 * @param assessCanWeight instance of the AssessCanWeight class
 	 * @param clamp instance of the Clamp class
-	 * @param usDistance sample provider from which to fetch ultrasonic sensor data
-	 * @param usData array in which to store the ultrasonic sensor data
+	 * @param usSampler sampler of the ultrasonic sensor
 	 * @param navigator instance of the Navigator class
 	 * @param lightLocalizer instance of the LightLocalizer class
 	 * @throws OdometerExceptions
 	 */
 	public CanLocator(Robot robot, AssessCanColor assessCanColor, AssessCanWeight assessCanWeight, Clamp clamp, 
-			SampleProvider usDistance, float[] usData, Navigation navigator, LightLocalizer lightLocalizer) throws OdometerExceptions {
+			SensorSampler usSampler, Navigation navigator, LightLocalizer lightLocalizer) throws OdometerExceptions {
 		odo = Odometer.getOdometer();
 		this.assessCanColor = assessCanColor;
 		this.assessCanWeight = assessCanWeight;
 		this.navigator = navigator;
 		this.lightLocalizer = lightLocalizer; 
 		this.clamp = clamp;
-		this.usDistance = usDistance;
-		this.usData = usData;
+		this.usReader = new FilteredSensor(usSampler, SampleFilter.chain(
+				new NoEchoFilter(MAX_NO_ECHO), new MedianFilter(MEDIAN_LENGTH)));
 		LLx = robot.getSearchZoneLLX();
 		LLy = robot.getSearchZoneLLY();
 		URx = robot.getSearchZoneURX();
@@ -77,6 +85,14 @@ public class CanLocator {
 		this.loopStop = false;
 	}
 	
+	/**
+	 * This method replaces the filter of the ultrasonic sensor readings used to spot the cans.
+	 * @param filter filter of the readings (in m)
+	 */
+	public void setFilter(SampleFilter filter) {
+		usReader.setFilter(filter);
+	}
+	
 	/**
 	 * This method runs the algorithm for the can searching.
 	 * It drives the EV3 forward and in a square around the search zone and looks for cans.
@@ -96,8 +112,9 @@ public class CanLocator {
 		
 		//If the EV3 has reached the UR of the search zone (because it is closer than the LL), then
 		//set the SC to UR and begin the search algorithm from there.
-		if((odo.getXYT()[0] > (URx*TILE_SIZE-DISTANCE_ERROR) && odo.getXYT()[0] < (URx*TILE_SIZE+DISTANCE_ERROR) 
-	            && odo.getXYT()[1] > (URy*TILE_SIZE-DISTANCE_ERROR) && odo.getXYT()[1] < (URy*TILE_SIZE+DISTANCE_ERROR))){
+		Pose pose = odo.getPose();
+		if((pose.getX() > (URx*TILE_SIZE-DISTANCE_ERROR) && pose.getX() < (URx*TILE_SIZE+DISTANCE_ERROR) 
+	            && pose.getY() > (URy*TILE_SIZE-DISTANCE_ERROR) && pose.getY() < (URy*TILE_SIZE+DISTANCE_ERROR))){
 			
 			SCx = URx;
 			SCy = URy;
@@ -181,17 +198,18 @@ public class CanLocator {
 	private boolean checkCan(double angle){
 	
 		canAngle = 0;
-	    double currentAngle = odo.getXYT()[2];
+	    double currentAngle = odo.getPose().getTheta();
 	    
 		//begin rotating to scan for cans 
 		navigator.turnToScan(angle);
+		usReader.reset();
         double testDistance;
         while ((testDistance = readUSDistance()) > TILE_SIZE - ULTRASONIC_ERROR) {
             
             //keep turning until the distance of the US is less than a tile (i.e a can is detected)
             
             //if the motors finish the 90 degree turn, and no can is found, the method returns false
-            if(!(Project.LEFT_MOTOR.isMoving()) || !(Project.RIGHT_MOTOR.isMoving())) {
+            if(!Project.WHEELS.isMoving()) {
                 
                 navigator.turnTo(-90);
                 return false;
@@ -199,14 +217,13 @@ public class CanLocator {
             
         }
         //if can is found, stop motors and record the angle the can was detected at
-        Project.LEFT_MOTOR.stop(true);
-        Project.RIGHT_MOTOR.stop();
+        Project.WHEELS.stop();
         if (testDistance > ULTRASONIC_CLOSE) {
-        	 navigator.turnTo(TEST_ANGLE_FAR);
+        	 navigator.turnTo(TEST_ANGLE_FAR, MotionProfile.PRECISE);
         }else {
-        	navigator.turnTo(TEST_ANGLE_CLOSE);
+        	navigator.turnTo(TEST_ANGLE_CLOSE, MotionProfile.PRECISE);
         }
-        canAngle = odo.getXYT()[2] - currentAngle;
+        canAngle = odo.getPose().getTheta() - currentAngle;
         if(canAngle < -110){
             canAngle = 360+canAngle-(ANGLE_ERROR/2);
         }
@@ -222,11 +239,11 @@ public class CanLocator {
 	private void assessCan(double distance){
 
 		int heavy = 0;
-		navigator.driveForward(distance);
+		navigator.driveForward(distance, MotionProfile.PRECISE); // approach the can gently
 		clamp.grabCan();
 		navigator.driveBack(2 * TILE_SIZE / 3);
 		navigator.driveForwardWeight(2 * TILE_SIZE / 3);
-		while(Project.LEFT_MOTOR.isMoving() && Project.RIGHT_MOTOR.isMoving()){
+		while(Project.WHEELS.isMoving()){
 			heavy = heavy | assessCanWeight.run();
 		}
 		//Beeps depending on the color and weight of the can
@@ -333,18 +350,21 @@ public class CanLocator {
 		
 		//Localization to fix odo when the EV3 has traveled half way across an edge of the SearchZone.
 		//Finds midpoint of the edge and compares it to the current EV3 coordinate.
-		if((int)((URy-LLy)/2) == (int)Cy) {
+		//Not needed when the drives hold their heading, the corners are enough.
+		double heading = odo.getPose().getTheta();
+		boolean midpointLocalization = !navigator.isHeadingHold();
+		if(midpointLocalization && (int)((URy-LLy)/2) == (int)Cy) {
 		
-			if ( (odo.getXYT()[2] >= 360-ANGLE_ERROR) || 
-			    	(odo.getXYT()[2] <= 0+ANGLE_ERROR)){
+			if ( (heading >= 360-ANGLE_ERROR) || 
+			    	(heading <= 0+ANGLE_ERROR)){
 				
 				navigator.turnTo(45);
 			    lightLocalizer.lightLocalize(Cx,Cy);
 				
 			}
 			
-			else if ( (odo.getXYT()[2] >= 180-ANGLE_ERROR) && 
-			    	(odo.getXYT()[2] <= 180+ANGLE_ERROR) ){
+			else if ( (heading >= 180-ANGLE_ERROR) && 
+			    	(heading <= 180+ANGLE_ERROR) ){
 			
 				navigator.turnTo(-135);
 				lightLocalizer.lightLocalize(Cx,Cy);
@@ -354,10 +374,10 @@ public class CanLocator {
 		}
 		
 		//The use of Math.round() is so the rounded value is used rather than the floored
-		else if ((int)(Math.round((URx-LLx)/2)) == (int)Cx) {
+		else if (midpointLocalization && (int)(Math.round((URx-LLx)/2)) == (int)Cx) {
 				
-			if ( (odo.getXYT()[2] >= 90-ANGLE_ERROR) && 
-			    	(odo.getXYT()[2] <= 90+ANGLE_ERROR) ){
+			if ( (heading >= 90-ANGLE_ERROR) && 
+			    	(heading <= 90+ANGLE_ERROR) ){
 				
 				navigator.turnTo(-45);
 				lightLocalizer.lightLocalize(Cx,Cy);
@@ -365,8 +385,8 @@ public class CanLocator {
 				
 			}
 			
-			else if ( (odo.getXYT()[2] >= 270-ANGLE_ERROR) &&
-			    	(odo.getXYT()[2] <= 270+ANGLE_ERROR) ){
+			else if ( (heading >= 270-ANGLE_ERROR) &&
+			    	(heading <= 270+ANGLE_ERROR) ){
 				
 				navigator.turnTo(135);
 				lightLocalizer.lightLocalize(Cx,Cy);
@@ -415,12 +435,13 @@ public class CanLocator {
 	private void travelToStartCorner() {
 		
 		navigator.turnTo(-canAngle);
+		double heading = odo.getPose().getTheta();
 		
 		//If the SC was UR, then go to UR
 		if (SCx == URx && SCy == URy){
 			
-			if ( (odo.getXYT()[2] >= 180-ANGLE_ERROR) && 
-			    	(odo.getXYT()[2] <= 180+ANGLE_ERROR) ){
+			if ( (heading >= 180-ANGLE_ERROR) && 
+			    	(heading <= 180+ANGLE_ERROR) ){
 			
 				if (Cx == URx && Cy == URy) {
 					
@@ -439,8 +460,8 @@ public class CanLocator {
 				}
 			}
 			
-			else if ( (odo.getXYT()[2] >= 270-ANGLE_ERROR) &&
-			    	(odo.getXYT()[2] <= 270+ANGLE_ERROR) ){
+			else if ( (heading >= 270-ANGLE_ERROR) &&
+			    	(heading <= 270+ANGLE_ERROR) ){
 			
 				navigator.turnTo(135);
 				lightLocalizer.lightLocalize(Cx,Cy);			
@@ -452,8 +473,8 @@ public class CanLocator {
 				lightLocalizer.lightLocalize(URx,URy);
 			}
 			
-			else if ( (odo.getXYT()[2] >= 360-ANGLE_ERROR) || 
-			    	(odo.getXYT()[2] <= 0+ANGLE_ERROR)){
+			else if ( (heading >= 360-ANGLE_ERROR) || 
+			    	(heading <= 0+ANGLE_ERROR)){
 				
 				navigator.turnTo(45);
 				lightLocalizer.lightLocalize(Cx,Cy);
@@ -466,8 +487,8 @@ public class CanLocator {
 				
 			}
 			
-			else if ( (odo.getXYT()[2] >= 90-ANGLE_ERROR) && 
-			    	(odo.getXYT()[2] <= 90+ANGLE_ERROR) ){
+			else if ( (heading >= 90-ANGLE_ERROR) && 
+			    	(heading <= 90+ANGLE_ERROR) ){
 
 				navigator.turnTo(-45);
 				lightLocalizer.lightLocalize(Cx,Cy);
@@ -482,8 +503,8 @@ public class CanLocator {
 		//Otherwise, the SC is always LL
 		else {
 			
-			if ( (odo.getXYT()[2] >= 360-ANGLE_ERROR) || 
-			    	(odo.getXYT()[2] <= 0+ANGLE_ERROR)){
+			if ( (heading >= 360-ANGLE_ERROR) || 
+			    	(heading <= 0+ANGLE_ERROR)){
 				
 				if(Cx == LLx && Cy == LLy) {
 					
@@ -504,8 +525,8 @@ public class CanLocator {
 				
 			}
 			
-			else if ( (odo.getXYT()[2] >= 90-ANGLE_ERROR) && 
-			    	(odo.getXYT()[2] <= 90+ANGLE_ERROR) ){
+			else if ( (heading >= 90-ANGLE_ERROR) && 
+			    	(heading <= 90+ANGLE_ERROR) ){
 
 				navigator.turnTo(-45);
 				lightLocalizer.lightLocalize(Cx,Cy);
@@ -517,8 +538,8 @@ public class CanLocator {
 				lightLocalizer.lightLocalize(Cx,Cy);
 			}
 			
-			else if ( (odo.getXYT()[2] >= 180-ANGLE_ERROR) && 
-			    	(odo.getXYT()[2] <= 180+ANGLE_ERROR) ){
+			else if ( (heading >= 180-ANGLE_ERROR) && 
+			    	(heading <= 180+ANGLE_ERROR) ){
 			
 				navigator.turnTo(-135);
 				lightLocalizer.lightLocalize(Cx,Cy);
@@ -530,8 +551,8 @@ public class CanLocator {
 				lightLocalizer.lightLocalize(LLx,LLy);
 			}
 			
-			else if ( (odo.getXYT()[2] >= 270-ANGLE_ERROR) &&
-			    	(odo.getXYT()[2] <= 270+ANGLE_ERROR) ){
+			else if ( (heading >= 270-ANGLE_ERROR) &&
+			    	(heading <= 270+ANGLE_ERROR) ){
 			
 				navigator.turnTo(135);
 				lightLocalizer.lightLocalize(Cx,Cy);			
@@ -546,13 +567,12 @@ public class CanLocator {
 	}
 	
 	/**
-	 * Method that fetches data from the ultrasonic sensor.
+	 * Method that reads the filtered data from the ultrasonic sensor.
 	 * @return distance (cm) from the wall
 	 */
-	private int readUSDistance() {
+	private double readUSDistance() {
 		//this method returns the ultrasonic distance read.
-		usDistance.fetchSample(usData, 0);
-		return (int) (usData[0] * 100);
+		return usReader.read() * 100;
 		
 	}
 
@@ -1,7 +1,5 @@
 package ca.mcgill.ecse211.model;
 
-import lejos.robotics.SampleProvider;
-
 /**
  * This class implements color classification to identify the color of the cans. Essentially, it
  * implements the color sensor to obtain the RGB values of the colored cans. Then, the RGB values
@@ -21,7 +19,7 @@ public class ColorClassification {
 
   // use an array to collect color data
   private float[] colorData;
-  private SampleProvider colorID;
+  private SensorSampler colorSampler;
   private static final double THRESHOLD = 0.35;
 
   /**
@@ -38,12 +36,11 @@ public class ColorClassification {
   /**
    * Constructor to initialize variables.
    * 
-   * @param float[] colorData
-   * @param SampleProvider colorId
+   * @param SensorSampler colorSampler
    */
-  public ColorClassification(float[] colorData, SampleProvider colorId) {
-    this.colorData = colorData;
-    this.colorID = colorId;
+  public ColorClassification(SensorSampler colorSampler) {
+    this.colorSampler = colorSampler;
+    this.colorData = new float[colorSampler.sampleSize()];
 
   }
 
@@ -98,12 +95,12 @@ public class ColorClassification {
   }
   
   /**
-   * This method is used to fetch the RGB values from the color sensor and store them in an array.
+   * This method is used to read the latest RGB values from the color sensor and store them in an array.
    * 
    * @return colorData : float[]
    */
   private float[] sampleData(){
-  colorID.fetchSample(colorData, 0);
+  colorSampler.getLatest(colorData);
   return colorData;
   }
 
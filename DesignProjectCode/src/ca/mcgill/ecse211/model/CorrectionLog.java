@@ -0,0 +1,133 @@
+package ca.mcgill.ecse211.model;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * This class keeps a record of every correction made to the odometer: the pose before and after
+ * the correction, and how far the robot travelled and turned since the previous correction. The
+ * data is kept in preallocated arrays so that recording costs nothing during the mission, and can
+ * be written to a CSV file on the brick after a run to see how the odometry error grows.
+ * 
+ * @author Carlo D'Angelo
+ */
+public class CorrectionLog {
+
+  /**
+   * Correction made by the light localization.
+   */
+  public static final int LIGHT_LOCALIZATION = 0;
+
+  /**
+   * Correction made by the ultrasonic localization.
+   */
+  public static final int ULTRASONIC_LOCALIZATION = 1;
+
+  /**
+   * Correction made when a grid line is crossed while driving (see OdometryCorrection).
+   */
+  public static final int GRID_LINE = 2;
+
+  private static final String[] SOURCE_NAMES = {"light", "ultrasonic", "grid line"};
+
+  private final long[] time; // ms since the log was created
+  private final int[] source;
+  private final double[] before; // x, y, theta before each correction
+  private final double[] after; // x, y, theta after each correction
+  private final double[] distance; // cm travelled since the previous correction
+  private final double[] rotation; // degrees turned since the previous correction
+  private final long startTime;
+  private int size = 0;
+  private int dropped = 0;
+
+  /**
+   * This is the default constructor of this class.
+   * 
+   * @param capacity maximum number of corrections recorded (later ones are dropped)
+   */
+  public CorrectionLog(int capacity) {
+    time = new long[capacity];
+    source = new int[capacity];
+    before = new double[3 * capacity];
+    after = new double[3 * capacity];
+    distance = new double[capacity];
+    rotation = new double[capacity];
+    startTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Records a correction.
+   * 
+   * @param source what made the correction (e.g., LIGHT_LOCALIZATION)
+   * @param previous pose before the correction: x, y, theta (degrees)
+   * @param x corrected x (cm)
+   * @param y corrected y (cm)
+   * @param theta corrected theta (degrees)
+   * @param distance distance (cm) travelled since the previous correction
+   * @param rotation rotation (degrees) since the previous correction
+   */
+  public synchronized void record(int source, double[] previous, double x, double y, double theta,
+      double distance, double rotation) {
+    if (size == time.length) {
+      dropped++;
+      return;
+    }
+    this.time[size] = System.currentTimeMillis() - startTime;
+    this.source[size] = source;
+    this.before[3 * size] = previous[0];
+    this.before[3 * size + 1] = previous[1];
+    this.before[3 * size + 2] = previous[2];
+    this.after[3 * size] = x;
+    this.after[3 * size + 1] = y;
+    this.after[3 * size + 2] = theta;
+    this.distance[size] = distance;
+    this.rotation[size] = rotation;
+    size++;
+  }
+
+  /**
+   * @return number of corrections recorded
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * @return number of corrections that did not fit in the log
+   */
+  public synchronized int getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Writes the log as a CSV file, one correction per line, with the position error (corrected minus
+   * previous pose) in the last columns.
+   * 
+   * @param fileName name of the file to write
+   * @throws IOException
+   */
+  public synchronized void dump(String fileName) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(fileName));
+    try {
+      out.println("time_ms,source,x,y,theta,corrected_x,corrected_y,corrected_theta,"
+          + "distance_cm,rotation_deg,error_x,error_y,error_theta");
+      for (int i = 0; i < size; i++) {
+        double errorTheta = after[3 * i + 2] - before[3 * i + 2];
+        if (errorTheta > 180) {
+          errorTheta -= 360;
+        } else if (errorTheta <= -180) {
+          errorTheta += 360;
+        }
+        out.println(time[i] + "," + SOURCE_NAMES[source[i]] + "," + before[3 * i] + ","
+            + before[3 * i + 1] + "," + before[3 * i + 2] + "," + after[3 * i] + ","
+            + after[3 * i + 1] + "," + after[3 * i + 2] + "," + distance[i] + "," + rotation[i]
+            + "," + (after[3 * i] - before[3 * i]) + "," + (after[3 * i + 1] - before[3 * i + 1])
+            + "," + errorTheta);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+}
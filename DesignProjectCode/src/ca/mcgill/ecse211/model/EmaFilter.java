@@ -0,0 +1,39 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Exponential moving average: each reading moves the output by a fraction (the weight) of its
+ * difference with the output. It smooths noise but, unlike the median, lets part of a spike
+ * through.
+ * 
+ * @author Carlo D'Angelo
+ */
+public class EmaFilter extends SampleFilter {
+
+  private final float weight;
+  private float average;
+  private boolean empty = true;
+
+  /**
+   * Creates a filter.
+   * 
+   * @param weight weight of each new reading, between 0 (no change) and 1 (no filtering)
+   */
+  public EmaFilter(float weight) {
+    this.weight = weight;
+  }
+
+  public float filter(float sample) {
+    if (empty) {
+      average = sample;
+      empty = false;
+    } else {
+      average += weight * (sample - average);
+    }
+    return average;
+  }
+
+  public void reset() {
+    empty = true;
+  }
+
+}
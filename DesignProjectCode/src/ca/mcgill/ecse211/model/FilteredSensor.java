@@ -0,0 +1,79 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Reads a sensor through a {@link SampleFilter}, for one consumer. Every sample the
+ * {@link SensorSampler} published since the previous read goes through the filter once, in
+ * order, however often the consumer reads; several consumers of the same sensor each have their
+ * own filter.
+ * 
+ * @author Carlo D'Angelo
+ */
+public class FilteredSensor {
+
+  private final SensorSampler sampler;
+  private SampleFilter filter;
+  private final float[] sample;
+  private long next; // next sample to filter
+  private float value;
+  private long time;
+
+  /**
+   * Creates a reader.
+   * 
+   * @param sampler sampler of the sensor
+   * @param filter filter of the first value of each sample
+   */
+  public FilteredSensor(SensorSampler sampler, SampleFilter filter) {
+    this.sampler = sampler;
+    this.filter = filter;
+    this.sample = new float[sampler.sampleSize()];
+    reset();
+  }
+
+  /**
+   * Replaces the filter, and starts it from the newest sample.
+   * 
+   * @param filter filter of the first value of each sample
+   */
+  public synchronized void setFilter(SampleFilter filter) {
+    this.filter = filter;
+    reset();
+  }
+
+  /**
+   * Forgets the samples so far: the next read starts from the newest sample, e.g., at the start
+   * of a sweep.
+   */
+  public synchronized void reset() {
+    filter.reset();
+    next = Math.max(0, sampler.getCount() - 1);
+  }
+
+  /**
+   * Filters the samples published since the previous read.
+   * 
+   * @return the filtered value after the newest sample
+   */
+  public synchronized float read() {
+    long end = sampler.getCount();
+    if (end - next >= sampler.getCapacity()) {
+      next = end - sampler.getCapacity() + 1; // the older ones were overwritten
+    }
+    for (; next < end; next++) {
+      long sampleTime = sampler.getSample(next, sample);
+      if (sampleTime != 0) {
+        value = filter.filter(sample[0]);
+        time = sampleTime;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @return System.nanoTime() of the newest sample filtered
+   */
+  public synchronized long getTime() {
+    return time;
+  }
+
+}
@@ -0,0 +1,119 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Odometry backend using integer arithmetic only, for the EV3's processor which has no floating
+ * point unit. Positions are kept in Q16.16 centimetres and the heading as a 32-bit binary angle
+ * (2^32 units per turn, so it wraps around for free). Sine and cosine come from a table with linear
+ * interpolation, and each update is integrated at its mid-update heading.
+ * <p>
+ * The double precision pose in the odometer data is only written once per update, from the fixed
+ * point state. If something else writes the pose (e.g., a localization calling setXYT()), the fixed
+ * point state is reloaded from it before the next update.
+ * 
+ * @author Carlo D'Angelo
+ */
+public class FixedPointOdometry extends OdometryBackend {
+
+  /**
+   * Number of table entries for a full turn (a power of two).
+   */
+  private static final int TABLE_BITS = 12;
+  private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+  /**
+   * sin() of each table entry in Q2.30, with one extra entry so that interpolation never wraps.
+   */
+  private static final int[] SINE = new int[TABLE_SIZE + 1];
+
+  static {
+    for (int i = 0; i <= TABLE_SIZE; i++) {
+      SINE[i] = (int) Math.round(Math.sin(2 * Math.PI * i / TABLE_SIZE) * (1 << 30));
+    }
+  }
+
+  private static final int QUARTER_TURN = 1 << 30; // binary angle of 90 degrees
+  private static final long HALF_Q8 = 1L << 7; // added before a shift to round
+  private static final long HALF_Q16 = 1L << 15;
+  private static final long HALF_Q30 = 1L << 29;
+  private static final double ONE = 65536.0; // 1.0 in Q16.16
+  private static final double RADIANS_PER_UNIT = 2 * Math.PI / 4294967296.0;
+
+  /**
+   * Half the wheel displacement per tacho degree, in Q32 centimetres.
+   */
+  private final long HALF_DISTANCE_PER_DEGREE;
+
+  /**
+   * Change of heading per tacho degree of difference between the wheels, in binary angle units
+   * scaled by 2^8.
+   */
+  private final long TURN_PER_DEGREE;
+
+  // Fixed point state
+  private int x; // Q16.16 cm
+  private int y; // Q16.16 cm
+  private int theta; // binary angle
+
+  /**
+   * Sequence number of the odometer data after this backend's last write.
+   */
+  private int sequence = -1;
+
+  private final double[] position = new double[3];
+
+  /**
+   * This is the default constructor of this class.
+   * 
+   * @param odoData odometer data to update
+   * @param wheelRad radius of the wheels (cm)
+   * @param track distance between the centers of the wheels (cm)
+   */
+  public FixedPointOdometry(OdometerData odoData, double wheelRad, double track) {
+    super(odoData);
+    double distancePerDegree = Math.PI * wheelRad / 180.0;
+    this.HALF_DISTANCE_PER_DEGREE = Math.round(distancePerDegree / 2 * 4294967296.0);
+    this.TURN_PER_DEGREE =
+        Math.round(distancePerDegree / track / RADIANS_PER_UNIT * 256);
+  }
+
+  @Override
+  public void integrate(int leftDelta, int rightDelta) {
+    // Shifts are rounded rather than truncated, so that no bias builds up over many updates
+    int deltaD = (int) (((leftDelta + rightDelta) * HALF_DISTANCE_PER_DEGREE + HALF_Q16) >> 16);
+    int deltaT = (int) (((leftDelta - rightDelta) * TURN_PER_DEGREE + HALF_Q8) >> 8);
+    int heading, newX, newY;
+
+    do {
+      int current = odoData.getSequence();
+      if (current != sequence) { // pose was overwritten, start from it
+        sequence = odoData.getXYTRadians(position);
+        x = (int) Math.round(position[0] * ONE);
+        y = (int) Math.round(position[1] * ONE);
+        theta = (int) (long) (position[2] / RADIANS_PER_UNIT);
+      }
+      heading = theta + (deltaT >> 1);
+      newX = x + (int) (((long) deltaD * sin(heading) + HALF_Q30) >> 30);
+      newY = y + (int) (((long) deltaD * sin(heading + QUARTER_TURN) + HALF_Q30) >> 30);
+    } while (!odoData.setXYTRadians(sequence, newX / ONE, newY / ONE,
+        (theta + deltaT & 0xFFFFFFFFL) * RADIANS_PER_UNIT));
+
+    x = newX;
+    y = newY;
+    theta += deltaT;
+    sequence += 2; // our own write
+  }
+
+  /**
+   * Table-driven sine.
+   * 
+   * @param angle binary angle (2^32 units per turn)
+   * @return sin(angle) in Q2.30
+   */
+  static int sin(int angle) {
+    int index = angle >>> (32 - TABLE_BITS);
+    int fraction = (angle >>> (16 - TABLE_BITS)) & 0xFFFF; // next 16 bits
+    int low = SINE[index];
+    return low + (int) (((long) (SINE[index + 1] - low) * fraction) >> 16);
+  }
+
+}
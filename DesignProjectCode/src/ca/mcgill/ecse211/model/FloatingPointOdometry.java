@@ -0,0 +1,89 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Odometry backend computing in double precision. The heading is kept in radians throughout, and
+ * sin/cos are computed once per update.
+ * 
+ * @author Carlo D'Angelo
+ * @author Mohamed Samee
+ */
+public class FloatingPointOdometry extends OdometryBackend {
+
+  private final double TRACK;
+  private final double DISTANCE_PER_DEGREE; // wheel displacement (cm) per tacho degree
+
+  private volatile Odometer.Integration integration = Odometer.Integration.ARC;
+
+  //Variables that help with the implementation of the odometer
+  private double distL, distR, deltaD, deltaT, dX, dY, heading;
+
+  /**
+   * This is the default constructor of this class.
+   * 
+   * @param odoData odometer data to update
+   * @param wheelRad radius of the wheels (cm)
+   * @param track distance between the centers of the wheels (cm)
+   */
+  public FloatingPointOdometry(OdometerData odoData, double wheelRad, double track) {
+    super(odoData);
+    this.TRACK = track;
+    this.DISTANCE_PER_DEGREE = Math.PI * wheelRad / 180.0;
+  }
+
+  @Override
+  public void integrate(int leftDelta, int rightDelta) {
+    distL = DISTANCE_PER_DEGREE * leftDelta;     // compute wheel   
+    distR = DISTANCE_PER_DEGREE * rightDelta;   // displacements   
+    deltaD = 0.5 * (distL + distR);      // compute vehicle displacement   
+    deltaT = ((distL - distR) / TRACK);   // compute change in heading (radians)
+
+    switch (integration) {
+      case EULER:
+        heading = odoData.getThetaRadians() + deltaT;
+        break;
+      case MIDPOINT:
+        heading = odoData.getThetaRadians() + 0.5 * deltaT;
+        break;
+      default: // ARC
+        heading = odoData.getThetaRadians() + 0.5 * deltaT;
+        deltaD *= arcFactor(0.5 * deltaT); // chord of the arc rather than its length
+        break;
+    }
+    dX = deltaD * Math.sin(heading);    // compute X component of displacement   
+    dY = deltaD * Math.cos(heading);  // compute Y component of displacement
+ 
+    odoData.updateRadians(dX, dY, deltaT);
+  }
+
+  /**
+   * Ratio between the chord and the length of a circular arc, sin(h)/h, where h is half the change
+   * in heading along the arc. A truncated series is used for the small angles of a single update.
+   * 
+   * @param halfAngle half the change in heading (radians)
+   * @return chord length divided by arc length
+   */
+  private static double arcFactor(double halfAngle) {
+    double h2 = halfAngle * halfAngle;
+    if (h2 < 0.01) {
+      return 1 - h2 / 6 * (1 - h2 / 20); // error below 1e-10 for |h| < 0.1
+    }
+    return Math.sin(halfAngle) / halfAngle;
+  }
+
+  /**
+   * Selects how the displacement of each update is integrated. ARC is used by default.
+   * 
+   * @param integration integration mode
+   */
+  public void setIntegration(Odometer.Integration integration) {
+    this.integration = integration;
+  }
+
+  /**
+   * @return the integration mode in use
+   */
+  public Odometer.Integration getIntegration() {
+    return integration;
+  }
+
+}
@@ -0,0 +1,152 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * PID controller that keeps the heading of the robot during a straight drive. Its input is the
+ * heading error reported by the odometer (in degrees) and its output is the difference of speed
+ * to apply between the wheels (in degrees/second).
+ * <p>
+ * It also keeps telemetry of the cross-track error, the distance between the robot and the line
+ * it was meant to drive on, over all the drives since {@link #resetTelemetry()}.
+ *
+ * @author Carlo D'Angelo
+ */
+public class HeadingController {
+
+  private volatile double kp;
+  private volatile double ki;
+  private volatile double kd;
+  private final double maxOutput;
+
+  // Controller state, only used by the thread that drives
+  private double integral;
+  private double lastError;
+  private boolean firstUpdate;
+
+  // Cross-track error telemetry
+  private double maxCrossTrack;
+  private double sumSquares;
+  private int samples;
+
+  /**
+   * Creates a controller.
+   *
+   * @param kp proportional gain (degrees/second per degree)
+   * @param ki integral gain (degrees/second per degree.second)
+   * @param kd derivative gain (degrees/second per degree/second)
+   * @param maxOutput largest speed difference that the controller asks for (in degrees/second)
+   */
+  public HeadingController(double kp, double ki, double kd, double maxOutput) {
+    this.kp = kp;
+    this.ki = ki;
+    this.kd = kd;
+    this.maxOutput = maxOutput;
+    reset();
+  }
+
+  /**
+   * Changes the gains, e.g., while tuning. Takes effect at the next update.
+   *
+   * @param kp proportional gain
+   * @param ki integral gain
+   * @param kd derivative gain
+   */
+  public void setGains(double kp, double ki, double kd) {
+    this.kp = kp;
+    this.ki = ki;
+    this.kd = kd;
+  }
+
+  /**
+   * Clears the integral and derivative terms. Called at the start of each drive.
+   */
+  public void reset() {
+    integral = 0;
+    lastError = 0;
+    firstUpdate = true;
+  }
+
+  /**
+   * Computes the correction for the current heading error.
+   *
+   * @param error heading to reach minus current heading (in degrees, positive clockwise)
+   * @param dt time since the previous update (in seconds)
+   * @return how much faster the left wheel should turn than the right one, relative to the
+   *         direction of travel (in degrees/second)
+   */
+  public double update(double error, double dt) {
+    double derivative = 0;
+    if (!firstUpdate && dt > 0) {
+      derivative = (error - lastError) / dt;
+    }
+    firstUpdate = false;
+    lastError = error;
+
+    integral += error * dt;
+    if (ki != 0) { // anti-windup: the integral term alone never saturates the output
+      double limit = maxOutput / Math.abs(ki);
+      integral = Math.max(-limit, Math.min(limit, integral));
+    }
+
+    double output = kp * error + ki * integral + kd * derivative;
+    return Math.max(-maxOutput, Math.min(maxOutput, output));
+  }
+
+  /**
+   * Records a cross-track error sample.
+   *
+   * @param crossTrack distance (in cm) between the robot and the line it should be on
+   */
+  public synchronized void recordCrossTrack(double crossTrack) {
+    maxCrossTrack = Math.max(maxCrossTrack, Math.abs(crossTrack));
+    sumSquares += crossTrack * crossTrack;
+    samples++;
+  }
+
+  /**
+   * Clears the cross-track error telemetry.
+   */
+  public synchronized void resetTelemetry() {
+    maxCrossTrack = 0;
+    sumSquares = 0;
+    samples = 0;
+  }
+
+  /**
+   * @return largest cross-track error (in cm) since the telemetry was reset
+   */
+  public synchronized double getMaxCrossTrack() {
+    return maxCrossTrack;
+  }
+
+  /**
+   * @return root mean square cross-track error (in cm) since the telemetry was reset
+   */
+  public synchronized double getRmsCrossTrack() {
+    return samples == 0 ? 0 : Math.sqrt(sumSquares / samples);
+  }
+
+  /**
+   * @return number of cross-track error samples since the telemetry was reset
+   */
+  public synchronized int getSampleCount() {
+    return samples;
+  }
+
+  /**
+   * Difference between two headings, the shortest way around.
+   *
+   * @param target heading to reach (in degrees)
+   * @param current current heading (in degrees)
+   * @return target - current, between -180 and 180 degrees
+   */
+  public static double headingError(double target, double current) {
+    double error = (target - current) % 360;
+    if (error > 180) {
+      error -= 360;
+    } else if (error < -180) {
+      error += 360;
+    }
+    return error;
+  }
+
+}
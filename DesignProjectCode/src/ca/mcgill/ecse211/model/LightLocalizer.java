@@ -2,9 +2,6 @@ package ca.mcgill.ecse211.model;
 
 import lejos.hardware.Sound;
 
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.robotics.SampleProvider;
-
 /**
  * This class handles the light localization of the robot.
  * 
@@ -24,6 +21,35 @@ public class LightLocalizer {
    * the light localization.
    */
   private static final int ROTATION_SPEED = 200;
+  
+  /**
+   * Rotation speed (in degrees/second) of the robot during the whole light localization when
+   * the lines are found by the LineDetector (see setLineDetector()).
+   */
+  private static final int LINE_SCAN_SPEED = 300;
+  
+  /**
+   * Largest number of full turns in place with the LineDetector, the robot turns again only
+   * when the lines of the previous turns do not give an accepted pose (see MAX_FIT_RMS).
+   */
+  private static final int LOCALIZATION_ATTEMPTS = 2;
+  
+  /**
+   * Largest root mean square distance (cm) between the line crossings and their grid lines for
+   * the pose of the LinePoseSolver to be accepted. It must also be reliable, i.e., checked by
+   * more crossings than unknowns.
+   */
+  private static final double MAX_FIT_RMS = 0.3;
+  
+  /**
+   * Largest number of line crossings kept for the LinePoseSolver.
+   */
+  private static final int MAX_CROSSINGS = 16;
+  
+  /**
+   * Time (ms) between two checks for new light sensor samples with the LineDetector.
+   */
+  private static final int SAMPLE_POLL_PERIOD = 5;
   private final double TILE_SIZE = Navigation.TILE_SIZE;
   
   /**
@@ -38,76 +64,133 @@ public class LightLocalizer {
   /**
    * Distance (cm) between the color sensor and the axis of rotation of the robot.
    */
-  private static final double LIGHT_LOC_DISTANCE = 10.2;
+  static final double LIGHT_LOC_DISTANCE = 10.2;
   
   /**
    * The robot moves this distance (cm) towards the localization point before
    * starting light localization.
    */
   private static final int EXTRA_DISTANCE = 5;
+  
+  /**
+   * When its position is known, the robot moves to this distance (cm) below and to the left
+   * of the localization point, on both axes, before starting light localization.
+   */
+  private static final double APPROACH_OFFSET = 5;
+  /**
+   * Heading correction (degrees) of the threshold method, measured with the open loop turnTo().
+   * It has not been measured with closed loop turns.
+   */
   private static final double TURN_ERROR = 16.8; 
   
   private Odometer odo;
-  private EV3LargeRegulatedMotor leftMotor, rightMotor;
+  private MotorPair wheels;
  
   private double[] linePosition;
+  private final double[] position = new double[3];
   private Navigation navigator;
   
-  private SampleProvider csLineDetector;
+  private SensorSampler lightSampler;
   private float[] csData;
+  private long sampleTime; // System.nanoTime() of the last light sensor reading
+  private final LineDetector lineDetector = new LineDetector();
+  private final LinePoseSolver poseSolver = new LinePoseSolver(LIGHT_LOC_DISTANCE, MAX_CROSSINGS);
+  private final double[] guesses = new double[6]; // x, y and heading offset of two guesses
+  private boolean lineDetection = false;
+  private int sweeps; // turns made by the last sweepLocalize()
 
   /**
    * This is the default constructor of this class.
-   * @param leftMotor left motor of robot
-   * @param rightMotor right motor of robot
-   * @param csLineDetector sample provider from which to fetch light sensor data
-   * @param csData array in which to receive the light sensor data
+   * @param wheels motors of the wheels of robot
+   * @param lightSampler sampler of the light sensor
    * @param navigator instance of Navigator class
    * @throws OdometerExceptions
    */
-  public LightLocalizer(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor,
-		  				  SampleProvider csLineDetector, float[] csData, Navigation navigator) throws OdometerExceptions {
+  public LightLocalizer(MotorPair wheels, SensorSampler lightSampler, Navigation navigator) throws OdometerExceptions {
 	odo = Odometer.getOdometer();
-	this.leftMotor = leftMotor;
-	this.rightMotor = rightMotor;
+	this.wheels = wheels;
 	linePosition = new double[4];
-	this.csLineDetector = csLineDetector;
-	this.csData = csData;
+	this.lightSampler = lightSampler;
+	this.csData = new float[lightSampler.sampleSize()];
 	this.navigator = navigator;
 	}
+  
+  /**
+   * Method that chooses how the grid lines are found. With the LineDetector, each line is timed
+   * at its middle from every light sensor sample, so the robot spins at one higher speed without
+   * pausing after the lines, and the pose is computed from the line headings alone (no
+   * TURN_ERROR). Otherwise, or if the pose from the LineDetector is not accepted, a line is the
+   * first reading 20% off the first one of the sweep.
+   * @param enabled true to use the LineDetector
+   */
+  public void setLineDetector(boolean enabled) {
+	lineDetection = enabled;
+  }
 
   /**
-   * Method that allows the robot to perform light localization.
+   * Method that allows the robot to perform light localization. Either way, the robot ends
+   * at the localization point facing 0 degrees, as far as the odometer knows.
    * @param pointX x coordinate of desired localization point
    * @param pointY y coordinate of desired localization point
+   * @return false if the lines found did not fit the grid, the robot then went to the point
+   *         with the odometer as it was, and a caller may localize again
    */
-  public void lightLocalize(double pointX, double pointY) {
+  public boolean lightLocalize(double pointX, double pointY) {
+	  navigator.waitForMotion(); // the navigator may be pipelined
+	  long start = System.nanoTime();
+	  
+	  if (lineDetection) {
+		  odo.getXYT(position);
+		  double startHeading = position[2];
+		  if (sweepLocalize(pointX, pointY)) {
+			  recordDuration(start, sweeps);
+			  return true;
+		  }
+		  // back to the heading of the start, which the threshold method expects
+		  odo.getXYT(position);
+		  navigator.submitTurnTo(Math.IEEEremainder(startHeading - position[2], 360),
+				  MotionProfile.PRECISE).await();
+		  start = System.nanoTime(); // only the threshold method is timed
+	  }
 	  
-      leftMotor.setSpeed(ROTATION_SPEED);
-	  rightMotor.setSpeed(ROTATION_SPEED);
+	  boolean localized = thresholdLocalize(pointX, pointY);
+	  recordDuration(start, 0);
+	  return localized;
+  }
+  
+  /**
+   * Method that performs the light localization with the threshold method: the robot turns
+   * clockwise from 45 degrees, and a line is the first reading 20% off the first one of the
+   * sweep, for each of the four lines.
+   * @param pointX x coordinate of desired localization point
+   * @param pointY y coordinate of desired localization point
+   * @return false if the angles between the lines do not fit the grid
+   */
+  private boolean thresholdLocalize(double pointX, double pointY) {
+      wheels.setSpeed(ROTATION_SPEED);
 	  
 	  int count = 0;
 	  float firstReading = readLineDarkness();
 	  float sample;
 	  while (count < 4) {
 		if (count == 3) {
-			leftMotor.setSpeed(ROTATION_SPEED_SLOW);
-			rightMotor.setSpeed(ROTATION_SPEED_SLOW);
+			wheels.setSpeed(ROTATION_SPEED_SLOW);
 		}
-		leftMotor.forward();
-		rightMotor.backward();
+		wheels.turnClockwise();
 
 		sample = readLineDarkness();
 
 		if (100*Math.abs(sample - firstReading)/firstReading > COLOUR_DIFF) {
-          linePosition[count] = odo.getXYT()[2];
+          if (!odo.poseAt(sampleTime, position)) {
+            odo.getXYT(position);
+          }
+          linePosition[count] = position[2];
           Sound.pause(350);
 		  count++;
 		}
 	  }
 
-	  leftMotor.stop(true);
-	  rightMotor.stop();
+	  wheels.stop();
 
 	  double deltaX, deltaY, angleX, angleY, deltaA;
 
@@ -117,25 +200,141 @@ public class LightLocalizer {
 	  
 	  angleY = linePosition[3] - linePosition[1];
 	  angleX = linePosition[2] - linePosition[0];
+	  
+	  // the two crossings of a line are 180 - 2a degrees apart, where a is under 45 degrees
+	  // when the sensor reaches the intersection; otherwise a line was missed or mistaken
+	  if (Math.abs(angleX - 180) > 90 || Math.abs(angleY - 180) > 90) {
+		  goToPoint(pointX, pointY);
+		  return false;
+	  }
 
 	  deltaX = -LIGHT_LOC_DISTANCE * Math.cos(Math.toRadians(angleY / 2));
 	  deltaY = -LIGHT_LOC_DISTANCE * Math.cos(Math.toRadians(angleX / 2));
 	  
 	  deltaA = 90 - (angleY / 2.0) - TURN_ERROR;
 	  
-	  navigator.turnTo(deltaA);
+	  navigator.submitTurnTo(deltaA, MotionProfile.PRECISE).await();
 
-	  odo.setXYT(pointX * TILE_SIZE + deltaX, pointY * TILE_SIZE + deltaY, 0.0);
+	  odo.correctXYT(pointX * TILE_SIZE + deltaX, pointY * TILE_SIZE + deltaY, 0.0,
+	      CorrectionLog.LIGHT_LOCALIZATION);
 	  
-	  navigator.travelTo(pointX, pointY);
+	  navigator.submitTravelTo(pointX, pointY, MotionProfile.PRECISE).await();
 
-	  navigator.turnTo(-Navigation.minAng);
+	  navigator.submitTurnTo(-Navigation.minAng, MotionProfile.PRECISE).await();
 	  
-	  odo.setXYT(pointX * TILE_SIZE, pointY * TILE_SIZE, 0.0);
+	  odo.correctXYT(pointX * TILE_SIZE, pointY * TILE_SIZE, 0.0, CorrectionLog.LIGHT_LOCALIZATION);
 	  
-	  leftMotor.stop(true);
-	  rightMotor.stop();
-
+	  wheels.stop();
+	  return true;
+  }
+  
+  /**
+   * Method that performs the light localization with the LineDetector: the robot turns once in
+   * place at a constant speed, and every sample of the light sensor is checked, so no line is
+   * missed for lack of samples. The LinePoseSolver fits x, y and the heading to all the line
+   * crossings; the robot turns again, adding the new crossings to the fit, only when there are
+   * not enough crossings on their lines to check the fit (e.g., a missed line) or they are too
+   * far from their lines. A pose that is still not accepted after LOCALIZATION_ATTEMPTS is not
+   * used: the odometer is left as it was and the robot where the last turn ended.
+   * @param pointX x coordinate of desired localization point
+   * @param pointY y coordinate of desired localization point
+   * @return true if a pose was accepted and the robot went to the point
+   */
+  private boolean sweepLocalize(double pointX, double pointY) {
+	  poseSolver.reset();
+	  sweeps = 0;
+	  boolean accepted = false;
+	  while (!accepted && sweeps < LOCALIZATION_ATTEMPTS) {
+		  sweeps++;
+		  int first = poseSolver.getCount();
+		  sweep();
+		  
+		  // from the first four lines of the turn as lightLocalize() does, and from where
+		  // moveClose() puts the robot with the heading of the odometer; both are near the
+		  // point, since a pose one tile away fits the lines as well
+		  int guessCount = 0;
+		  if (poseSolver.fourLineGuess(first, pointX * TILE_SIZE, pointY * TILE_SIZE, guesses, 0)) {
+			  guessCount++;
+		  }
+		  guesses[3 * guessCount] = pointX * TILE_SIZE - APPROACH_OFFSET;
+		  guesses[3 * guessCount + 1] = pointY * TILE_SIZE - APPROACH_OFFSET;
+		  guesses[3 * guessCount + 2] = 0;
+		  guessCount++;
+		  accepted = poseSolver.solve(guesses, guessCount) && poseSolver.isReliable()
+				  && poseSolver.getRms() <= MAX_FIT_RMS;
+	  }
+	  if (!accepted) {
+		  return false; // better the odometer as it was than an unchecked pose
+	  }
+	  
+	  odo.getXYT(position);
+	  double theta = ((position[2] + poseSolver.getOffset()) % 360 + 360) % 360;
+	  odo.correctXYT(poseSolver.getX(), poseSolver.getY(), theta, CorrectionLog.LIGHT_LOCALIZATION);
+	  
+	  goToPoint(pointX, pointY);
+	  odo.correctXYT(pointX * TILE_SIZE, pointY * TILE_SIZE, 0.0, CorrectionLog.LIGHT_LOCALIZATION);
+	  return true;
+  }
+  
+  /**
+   * Method that moves the robot to the localization point and turns it to 0 degrees, from the
+   * pose of the odometer.
+   * @param pointX x coordinate of desired localization point
+   * @param pointY y coordinate of desired localization point
+   */
+  private void goToPoint(double pointX, double pointY) {
+	  navigator.submitTravelTo(pointX, pointY, MotionProfile.PRECISE).await();
+	  
+	  odo.getXYT(position);
+	  navigator.submitTurnTo(Math.IEEEremainder(-position[2], 360), MotionProfile.PRECISE).await();
+  }
+  
+  /**
+   * Method that turns the robot once in place and adds the headings at the middle of the lines
+   * the light sensor crosses to the LinePoseSolver.
+   */
+  private void sweep() {
+	  lineDetector.reset();
+	  long next = lightSampler.getCount();
+	  double rotationStart = odo.getRotationTravelled();
+	  
+	  wheels.setSpeed(LINE_SCAN_SPEED);
+	  wheels.turnClockwise();
+	  while (odo.getRotationTravelled() - rotationStart < 360) {
+		  for (long end = lightSampler.getCount(); next < end; next++) {
+			  long time = lightSampler.getSample(next, csData);
+			  if (time != 0 && lineDetector.add(csData[0] * 1000, time)) {
+				  if (!odo.poseAt(lineDetector.getLineTime(), position)) {
+					  odo.getXYT(position);
+				  }
+				  poseSolver.addCrossing(position[2]);
+			  }
+		  }
+		  try {
+			  Thread.sleep(SAMPLE_POLL_PERIOD);
+		  } catch (InterruptedException e) {
+			  // there is nothing to be done
+		  }
+	  }
+	  wheels.stop();
+  }
+  
+  /**
+   * Method that records how long a light localization took in the motion cost model, if any.
+   * @param start System.nanoTime() at the start of the localization
+   * @param sweeps number of turns of the LineDetector sweep, 0 for the threshold method
+   */
+  private void recordDuration(long start, int sweeps) {
+	  MotionCostModel costModel = navigator.getCostModel();
+	  if (costModel == null) {
+		return;
+	  }
+	  double duration = (System.nanoTime() - start) / 1e9;
+	  if (sweeps > 0) {
+		costModel.recordSweepLocalization(sweeps, duration);
+	  } else {
+		costModel.recordLocalization(duration);
+	  }
   }
   
   /**
@@ -143,19 +342,33 @@ public class LightLocalizer {
    * for the actual light localization.
    */
   public void moveClose() {
-	leftMotor.setSpeed(ROTATION_SPEED);
-	rightMotor.setSpeed(ROTATION_SPEED);
+	wheels.setSpeed(ROTATION_SPEED);
     navigator.turnTo(45);
     navigator.driveForward(EXTRA_DISTANCE);
 
   }
   
+  /**
+   * Method that moves the robot next to the localization point, facing 45 degrees, when the
+   * odometer already knows its position (e.g., after UltrasonicLocalizer.wallFit()).
+   * @param pointX x coordinate of desired localization point
+   * @param pointY y coordinate of desired localization point
+   */
+  public void moveClose(double pointX, double pointY) {
+	wheels.setSpeed(ROTATION_SPEED);
+	double offset = APPROACH_OFFSET / TILE_SIZE;
+	navigator.travelTo(pointX - offset, pointY - offset);
+	navigator.waitForMotion();
+	odo.getXYT(position);
+	navigator.turnTo(Math.IEEEremainder(45 - position[2], 360));
+  }
+  
   /**
    * Method that fetches data from the light sensor.
    * @return darkness (value between 0-1) of what the light sensor is reading multiplied by 1000 
    */
   private float readLineDarkness() {
-	  csLineDetector.fetchSample(csData, 0);
+	  sampleTime = lightSampler.getLatest(csData);
 	  return csData[0] * 1000;
   }
 	
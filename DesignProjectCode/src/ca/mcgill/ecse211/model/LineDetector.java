@@ -0,0 +1,189 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Finds the grid lines in the readings of the light sensor facing the ground, and the time at
+ * which the sensor was right over the middle (the darkest point) of each line.
+ * <p>
+ * The floor brightness is a moving average of the readings off the lines. A crossing starts when
+ * the reading drops steeply (by more than SLOPE_ENTER percent of the floor from one reading to the
+ * next, or by LEVEL_ENTER percent in all if the edge is too gradual for that), and is confirmed
+ * once the reading is LEVEL_ENTER percent darker than the floor; it ends when the reading is back
+ * within LEVEL_EXIT percent of the floor. A steep drop that never gets that dark is noise. While on
+ * a line, the darkest reading and its two neighbours are kept, and a parabola through them gives
+ * the time of the darkest point between the readings.
+ * <p>
+ * The detector is handed every reading once and allocates nothing; the crossing is reported with
+ * the reading that ends it, so there is no need to pause after a line.
+ *
+ * @author Carlo D'Angelo
+ */
+public class LineDetector {
+
+  /**
+   * Drop (percent of the floor brightness) from one reading to the next that starts a crossing.
+   */
+  private static final float SLOPE_ENTER = 4;
+
+  /**
+   * Darkness (percent below the floor brightness) that confirms a crossing, same as the light
+   * localization's COLOUR_DIFF.
+   */
+  private static final float LEVEL_ENTER = 20;
+
+  /**
+   * Darkness (percent below the floor brightness) under which a crossing ends.
+   */
+  private static final float LEVEL_EXIT = 10;
+
+  /**
+   * Weight of each new reading off the lines in the floor brightness average.
+   */
+  private static final float BASELINE_WEIGHT = 0.1f;
+
+  private static final int FLOOR = 0;
+  private static final int FALLING = 1; // steep drop, not dark enough yet
+  private static final int LINE = 2;
+
+  private int state;
+  private boolean empty = true;
+  private float baseline;
+  private float previous;
+  private long previousTime;
+
+  // Darkest reading of the crossing, the one before it and the one after it
+  private float darkest, before, after;
+  private long darkestTime, beforeTime, afterTime;
+  private boolean hasAfter;
+
+  private long lineTime;
+  private int lines;
+
+  /**
+   * Adds a reading.
+   *
+   * @param sample brightness read by the sensor
+   * @param time System.nanoTime() of the reading
+   * @return true if the reading ends a crossing, whose time is then given by getLineTime()
+   */
+  public boolean add(float sample, long time) {
+    if (empty) { // the sensor is assumed to start on the floor
+      baseline = sample;
+      previous = sample;
+      previousTime = time;
+      state = FLOOR;
+      empty = false;
+      return false;
+    }
+    float level = 100 * (baseline - sample) / baseline;
+    float slope = 100 * (previous - sample) / baseline;
+    boolean ended = false;
+
+    switch (state) {
+      case FLOOR:
+        if (slope > SLOPE_ENTER || level > LEVEL_ENTER) {
+          state = FALLING;
+          startCrossing(sample, time);
+          if (level > LEVEL_ENTER) {
+            state = LINE;
+          }
+        } else {
+          baseline += BASELINE_WEIGHT * (sample - baseline);
+        }
+        break;
+      case FALLING:
+      case LINE:
+        track(sample, time);
+        if (state == FALLING && level > LEVEL_ENTER) {
+          state = LINE;
+        } else if (level < LEVEL_EXIT) {
+          if (state == LINE) {
+            lineTime = interpolate();
+            lines++;
+            ended = true;
+          }
+          state = FLOOR;
+        }
+        break;
+      default:
+        break;
+    }
+
+    previous = sample;
+    previousTime = time;
+    return ended;
+  }
+
+  /**
+   * Forgets the readings so far, e.g., before a new sweep. The next reading is taken as the floor
+   * brightness.
+   */
+  public void reset() {
+    empty = true;
+    lines = 0;
+  }
+
+  /**
+   * @return System.nanoTime() at which the sensor was over the middle of the last line found
+   */
+  public long getLineTime() {
+    return lineTime;
+  }
+
+  /**
+   * @return number of lines found since the last reset()
+   */
+  public int getLines() {
+    return lines;
+  }
+
+  /**
+   * @return true while the sensor is over a line (or entering one)
+   */
+  public boolean isOnLine() {
+    return state != FLOOR;
+  }
+
+  /**
+   * Starts a crossing at its first dark reading.
+   */
+  private void startCrossing(float sample, long time) {
+    before = previous;
+    beforeTime = previousTime;
+    darkest = sample;
+    darkestTime = time;
+    hasAfter = false;
+  }
+
+  /**
+   * Keeps the darkest reading of the crossing and its neighbours.
+   */
+  private void track(float sample, long time) {
+    if (sample < darkest) {
+      before = previous;
+      beforeTime = previousTime;
+      darkest = sample;
+      darkestTime = time;
+      hasAfter = false;
+    } else if (!hasAfter) {
+      after = sample;
+      afterTime = time;
+      hasAfter = true;
+    }
+  }
+
+  /**
+   * @return time of the vertex of the parabola through the darkest reading and its neighbours
+   */
+  private long interpolate() {
+    float curvature = before - 2 * darkest + after;
+    if (!hasAfter || curvature <= 0) {
+      return darkestTime;
+    }
+    double offset = 0.5 * (before - after) / curvature; // in readings, within +/- 0.5
+    if (offset < 0) {
+      return darkestTime + (long) (offset * (darkestTime - beforeTime));
+    }
+    return darkestTime + (long) (offset * (afterTime - darkestTime));
+  }
+
+}
@@ -0,0 +1,434 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Computes the pose of the robot from the headings at which its light sensor, which is behind the
+ * wheels, crossed the grid lines while the robot spun in place.
+ * <p>
+ * The unknowns are x, y and the offset between the heading of the odometer and the true heading.
+ * For a guess of them, each crossing puts the sensor at a point that should be on a grid line,
+ * and its residual is the distance from that point to the closest line. Gauss-Newton iterations
+ * minimize the sum of the squared residuals, going back to the closest lines at each step, so any
+ * number of crossings can be used. As long as a crossing is farther than MAX_RESIDUAL from its line
+ * and enough crossings are left, the crossing without which the others fit best is left out, e.g.,
+ * a mark on the floor taken for a line. The pose is not always unique (a mark can fit with three of
+ * the lines about as well as the fourth line does), so the solutions are compared by a cost that
+ * adds the heading correction of the odometer to their residuals.
+ * <p>
+ * The fit is only checked when there are more crossings than unknowns: isReliable() tells whether
+ * it was, and getRms() how well the crossings agree, so the caller knows when to sweep again.
+ *
+ * @author Carlo D'Angelo
+ */
+public class LinePoseSolver {
+
+  private static final double TILE_SIZE = Navigation.TILE_SIZE;
+
+  /**
+   * Crossings farther than this (in cm) from their line are outliers.
+   */
+  private static final double MAX_RESIDUAL = 1.0;
+
+  /**
+   * Fewest crossings for a solution, one per unknown.
+   */
+  private static final int MIN_CROSSINGS = 3;
+
+  /**
+   * Fewest crossings for the solution to be checked by its residuals.
+   */
+  private static final int RELIABLE_CROSSINGS = 4;
+
+  /**
+   * Largest distance (in cm) between a guess and its solution. The crossings fit a pose one tile
+   * away as well as the right one; the guess tells which grid intersection the robot is at.
+   */
+  private static final double MAX_CORRECTION = TILE_SIZE / 4;
+
+  /**
+   * Largest heading error (in degrees) of the odometer. The crossings fit the pose turned by 90,
+   * 180 or 270 degrees about the intersection as well as the right one.
+   */
+  private static final double MAX_OFFSET = 20;
+
+  /**
+   * Typical residual (in cm) and heading error of the odometer (in degrees), the units of cost().
+   */
+  private static final double RESIDUAL_NOISE = 0.3;
+  private static final double HEADING_NOISE = 5;
+
+  private static final int MAX_ITERATIONS = 10;
+
+  /**
+   * Steps smaller than this (in cm, or radians for the heading) end the iterations.
+   */
+  private static final double CONVERGED = 1e-4;
+
+  private final double sensorDistance;
+  private final double[] headings;
+  private final boolean[] inlier;
+  private final boolean[] bestInlier;
+  private int count;
+
+  // Current solution
+  private double x, y, offset;
+  private int inliers;
+  private double rms, worstResidual;
+
+  // Best solution of the last solve()
+  private boolean solved;
+  private double bestX, bestY, bestOffset, bestRms, bestCost;
+  private int bestInliers;
+
+  // Normal equations of a Gauss-Newton step
+  private final double[][] normal = new double[3][3];
+  private final double[] gradient = new double[3];
+  private final double[] step = new double[3];
+  private final double[] row = new double[3];
+  private final double[] lines = new double[4];
+
+  /**
+   * Creates a solver.
+   *
+   * @param sensorDistance distance (in cm) between the light sensor and the axis of rotation of
+   *        the robot, the sensor being behind it
+   * @param capacity largest number of crossings
+   */
+  public LinePoseSolver(double sensorDistance, int capacity) {
+    this.sensorDistance = sensorDistance;
+    this.headings = new double[capacity];
+    this.inlier = new boolean[capacity];
+    this.bestInlier = new boolean[capacity];
+  }
+
+  /**
+   * Forgets the crossings and the solution.
+   */
+  public void reset() {
+    count = 0;
+    solved = false;
+  }
+
+  /**
+   * Adds a crossing. The robot must only have turned in place since the first one.
+   *
+   * @param heading heading (in degrees) of the odometer when the sensor was over the line
+   * @return false if there is no room left for it
+   */
+  public boolean addCrossing(double heading) {
+    if (count == headings.length) {
+      return false;
+    }
+    headings[count++] = heading;
+    return true;
+  }
+
+  /**
+   * @return number of crossings added since the last reset()
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Guesses the pose from four crossings in the order lightLocalize() meets them: the robot is
+   * below and to the left of the grid intersection, within LIGHT_LOC_DISTANCE * sin(45) of both
+   * lines, and starts the sweep facing about 45 degrees, so the sensor crosses the horizontal line,
+   * the vertical line, the horizontal line and the vertical line again.
+   *
+   * @param first index of the first of the four crossings
+   * @param pointX x coordinate (in cm) of the intersection
+   * @param pointY y coordinate (in cm) of the intersection
+   * @param guess the array to store x, y and the heading offset (degrees)
+   * @param at index in guess of the x to store
+   * @return false if there are not four crossings from first
+   */
+  public boolean fourLineGuess(int first, double pointX, double pointY, double[] guess, int at) {
+    if (first + 4 > count) {
+      return false;
+    }
+    lines[0] = headings[first];
+    for (int i = 1; i < 4; i++) {
+      lines[i] = headings[first + i];
+      while (lines[i] < lines[i - 1]) {
+        lines[i] += 360;
+      }
+    }
+    // the robot faced 180 degrees halfway between the horizontal crossings, 270 between the others
+    guess[at] = pointX - sensorDistance * Math.cos(Math.toRadians((lines[3] - lines[1]) / 2));
+    guess[at + 1] = pointY - sensorDistance * Math.cos(Math.toRadians((lines[2] - lines[0]) / 2));
+    guess[at + 2] = (180 - (lines[0] + lines[2]) / 2 + 270 - (lines[1] + lines[3]) / 2) / 2;
+    return true;
+  }
+
+  /**
+   * Fits the pose to the crossings from each of a few guesses, and keeps the solution with the
+   * most crossings on their lines, then the lowest cost().
+   *
+   * @param guesses x, y (in cm) and heading offset (in degrees) of each guess, one after the other
+   * @param guessCount number of guesses
+   * @return false if no guess led to a solution
+   */
+  public boolean solve(double[] guesses, int guessCount) {
+    solved = false;
+    for (int g = 0; g < guessCount; g++) {
+      if (!solveFrom(guesses[3 * g], guesses[3 * g + 1], guesses[3 * g + 2])) {
+        continue;
+      }
+      if (!solved || inliers > bestInliers || (inliers == bestInliers && cost() < bestCost)) {
+        solved = true;
+        bestX = x;
+        bestY = y;
+        bestOffset = offset;
+        bestRms = rms;
+        bestCost = cost();
+        bestInliers = inliers;
+        System.arraycopy(inlier, 0, bestInlier, 0, count);
+      }
+    }
+    return solved;
+  }
+
+  /**
+   * @return true if the last solve() found a solution
+   */
+  public boolean isSolved() {
+    return solved;
+  }
+
+  /**
+   * @return true if the solution was checked by more crossings than unknowns
+   */
+  public boolean isReliable() {
+    return solved && bestInliers >= RELIABLE_CROSSINGS;
+  }
+
+  /**
+   * @return x (in cm) of the axis of rotation of the robot
+   */
+  public double getX() {
+    return bestX;
+  }
+
+  /**
+   * @return y (in cm) of the axis of rotation of the robot
+   */
+  public double getY() {
+    return bestY;
+  }
+
+  /**
+   * @return angle (in degrees) to add to the heading of the odometer to get the true heading
+   */
+  public double getOffset() {
+    return bestOffset;
+  }
+
+  /**
+   * @return root mean square distance (in cm) of the crossings used to their lines, 0 if there are
+   *         no more crossings than unknowns
+   */
+  public double getRms() {
+    return bestRms;
+  }
+
+  /**
+   * @return number of crossings used by the solution
+   */
+  public int getInliers() {
+    return bestInliers;
+  }
+
+  /**
+   * @param i index of a crossing
+   * @return true if the crossing was left out of the solution
+   */
+  public boolean isOutlier(int i) {
+    return !bestInlier[i];
+  }
+
+  /**
+   * Fits the pose from a guess, leaving out the outliers one by one: each time, the crossing left
+   * out is the one without which the others fit best (the worst residual may be a good crossing
+   * pulled away by the outlier), and if several can be left out, the one with the lowest cost().
+   *
+   * @return false if no fit of enough crossings ends near the guess with all its residuals small
+   */
+  private boolean solveFrom(double x0, double y0, double offset0) {
+    inliers = count;
+    for (int i = 0; i < count; i++) {
+      inlier[i] = true;
+    }
+
+    while (true) {
+      if (!fit(x0, y0, offset0)) {
+        return false;
+      }
+      if (worstResidual <= MAX_RESIDUAL) {
+        return true;
+      }
+      if (inliers == MIN_CROSSINGS) {
+        return false;
+      }
+      int outlier = -1;
+      boolean outlierFits = false;
+      double outlierScore = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < count; i++) {
+        if (inlier[i]) {
+          inlier[i] = false;
+          inliers--;
+          if (fit(x0, y0, offset0)) {
+            // a fit with all its residuals small wins, then the lowest cost
+            boolean fits = worstResidual <= MAX_RESIDUAL;
+            double score = cost();
+            if ((fits && !outlierFits) || (fits == outlierFits && score < outlierScore)) {
+              outlier = i;
+              outlierFits = fits;
+              outlierScore = score;
+            }
+          }
+          inlier[i] = true;
+          inliers++;
+        }
+      }
+      if (outlier < 0) {
+        return false;
+      }
+      inlier[outlier] = false;
+      inliers--;
+    }
+  }
+
+  /**
+   * Fits the pose to the inliers from a guess, and computes the residuals of the fit.
+   *
+   * @return false if the crossings do not determine the pose, or the fit is on other lines than
+   *         the guess (e.g., one tile away) or turns the odometer by more than MAX_OFFSET
+   */
+  private boolean fit(double x0, double y0, double offset0) {
+    x = x0;
+    y = y0;
+    offset = offset0;
+    if (!iterate() || Math.hypot(x - x0, y - y0) > MAX_CORRECTION
+        || Math.abs(Math.IEEEremainder(offset, 360)) > MAX_OFFSET) {
+      return false;
+    }
+    double squares = 0;
+    worstResidual = 0;
+    for (int i = 0; i < count; i++) {
+      if (inlier[i]) {
+        double residual = Math.abs(residual(i, null));
+        squares += residual * residual;
+        worstResidual = Math.max(worstResidual, residual);
+      }
+    }
+    rms = Math.sqrt(squares / inliers);
+    return true;
+  }
+
+  /**
+   * @return cost of the current fit: its residuals and its heading correction, each relative to
+   *         its typical size
+   */
+  private double cost() {
+    double heading = Math.IEEEremainder(offset, 360) / HEADING_NOISE;
+    return rms * rms / (RESIDUAL_NOISE * RESIDUAL_NOISE) + heading * heading;
+  }
+
+  /**
+   * Gauss-Newton iterations over the inliers.
+   *
+   * @return false if the crossings do not determine the pose
+   */
+  private boolean iterate() {
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      for (int r = 0; r < 3; r++) {
+        gradient[r] = 0;
+        for (int c = 0; c < 3; c++) {
+          normal[r][c] = 0;
+        }
+      }
+      for (int i = 0; i < count; i++) {
+        if (!inlier[i]) {
+          continue;
+        }
+        double residual = residual(i, row);
+        for (int r = 0; r < 3; r++) {
+          gradient[r] -= row[r] * residual;
+          for (int c = 0; c < 3; c++) {
+            normal[r][c] += row[r] * row[c];
+          }
+        }
+      }
+      if (!solve3(normal, gradient, step)) {
+        return false;
+      }
+      x += step[0];
+      y += step[1];
+      offset += Math.toDegrees(step[2]);
+      if (Math.abs(step[0]) < CONVERGED && Math.abs(step[1]) < CONVERGED
+          && Math.abs(step[2]) < CONVERGED) {
+        break;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Residual of a crossing for the current solution: the signed distance from the sensor to the
+   * closest grid line.
+   *
+   * @param i index of the crossing
+   * @param jacobian the array to store the derivatives of the residual with respect to x, y and
+   *        the offset (in radians), or null
+   * @return the residual (in cm)
+   */
+  private double residual(int i, double[] jacobian) {
+    double heading = Math.toRadians(headings[i] + offset);
+    double sin = Math.sin(heading);
+    double cos = Math.cos(heading);
+    double sensorX = x - sensorDistance * sin;
+    double sensorY = y - sensorDistance * cos;
+    double errorX = sensorX - Math.round(sensorX / TILE_SIZE) * TILE_SIZE;
+    double errorY = sensorY - Math.round(sensorY / TILE_SIZE) * TILE_SIZE;
+    if (Math.abs(errorX) <= Math.abs(errorY)) { // on a vertical line
+      if (jacobian != null) {
+        jacobian[0] = 1;
+        jacobian[1] = 0;
+        jacobian[2] = -sensorDistance * cos;
+      }
+      return errorX;
+    }
+    if (jacobian != null) {
+      jacobian[0] = 0;
+      jacobian[1] = 1;
+      jacobian[2] = sensorDistance * sin;
+    }
+    return errorY;
+  }
+
+  /**
+   * Solves a 3 by 3 linear system by Cramer's rule.
+   *
+   * @return false if the system is singular
+   */
+  private static boolean solve3(double[][] a, double[] b, double[] solution) {
+    double determinant = det3(a[0][0], a[0][1], a[0][2], a[1][0], a[1][1], a[1][2], a[2][0],
+        a[2][1], a[2][2]);
+    if (Math.abs(determinant) < 1e-9) {
+      return false;
+    }
+    double s0 = det3(b[0], a[0][1], a[0][2], b[1], a[1][1], a[1][2], b[2], a[2][1], a[2][2]);
+    double s1 = det3(a[0][0], b[0], a[0][2], a[1][0], b[1], a[1][2], a[2][0], b[2], a[2][2]);
+    double s2 = det3(a[0][0], a[0][1], b[0], a[1][0], a[1][1], b[1], a[2][0], a[2][1], b[2]);
+    solution[0] = s0 / determinant;
+    solution[1] = s1 / determinant;
+    solution[2] = s2 / determinant;
+    return true;
+  }
+
+  private static double det3(double a, double b, double c, double d, double e, double f, double g,
+      double h, double i) {
+    return a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+  }
+
+}
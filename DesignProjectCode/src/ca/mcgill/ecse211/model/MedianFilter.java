@@ -0,0 +1,89 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Median of the last N readings. A single spurious reading never gets through a median of 3 or
+ * more, and an edge is only delayed by N / 2 readings.
+ * <p>
+ * The last N readings are kept both in arrival order (ring buffer) and sorted. Each new reading
+ * takes the place of the oldest one in the sorted array, found by a binary search, and slides to
+ * its own place, so no sorting is ever done.
+ * <p>
+ * The slide moves every value between the two places, so a reading costs O(N) in the worst
+ * case, not O(log N). This is deliberate: the filters are 3 and 5 readings long, where shifting at
+ * most 4 floats in one array costs less than the bookkeeping of two heaps or a skiplist (and
+ * allocates nothing). A filter over hundreds of readings would need one of those instead.
+ * 
+ * @author Carlo D'Angelo
+ */
+public class MedianFilter extends SampleFilter {
+
+  private final float[] ring;
+  private final float[] sorted;
+  private int next = 0; // index of the oldest reading in ring
+  private int size = 0;
+
+  /**
+   * Creates a filter.
+   * 
+   * @param length number of readings the median is taken over
+   */
+  public MedianFilter(int length) {
+    ring = new float[length];
+    sorted = new float[length];
+  }
+
+  public float filter(float sample) {
+    if (size < ring.length) {
+      insert(sample, size);
+      ring[size++] = sample;
+    } else {
+      float oldest = ring[next];
+      ring[next] = sample;
+      next = (next + 1) % ring.length;
+      // the new reading takes the place of the oldest one, then slides to its own
+      int i = search(oldest, size);
+      while (i > 0 && sorted[i - 1] > sample) {
+        sorted[i] = sorted[i - 1];
+        i--;
+      }
+      while (i < size - 1 && sorted[i + 1] < sample) {
+        sorted[i] = sorted[i + 1];
+        i++;
+      }
+      sorted[i] = sample;
+    }
+    return size % 2 == 1 ? sorted[size / 2] : (sorted[size / 2 - 1] + sorted[size / 2]) / 2;
+  }
+
+  public void reset() {
+    next = 0;
+    size = 0;
+  }
+
+  /**
+   * Inserts a value in the first count values of the sorted array.
+   */
+  private void insert(float value, int count) {
+    int position = search(value, count);
+    System.arraycopy(sorted, position, sorted, position + 1, count - position);
+    sorted[position] = value;
+  }
+
+  /**
+   * @return first index in the first count values of the sorted array whose value is not less
+   *         than the given one
+   */
+  private int search(float value, int count) {
+    int low = 0, high = count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+}
@@ -0,0 +1,222 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Peephole optimizer of the motions given to the {@link Navigation} while it is buffering. The
+ * last motion is held back until the next one is known, so that:
+ * <ul>
+ * <li>back to back turns are folded into one turn of at most 180 degrees (a turn that folds with
+ * nothing runs as requested, so a turnTo(-180) still turns counterclockwise),</li>
+ * <li>back to back straight drives (forward or backward) are merged into one,</li>
+ * <li>turns and drives that end up doing nothing are dropped,</li>
+ * <li>the turn at the start of a travelTo() is made explicit, using the pose predicted at the end
+ * of the previous motions, so that it folds with a turn before it. The travelTo() itself still
+ * runs, and only corrects what is left of the turn from the actual odometer pose.</li>
+ * </ul>
+ * It keeps count of the turning (in degrees), distance (in cm) and motions it saved since the
+ * buffering was turned on, e.g., over one route.
+ *
+ * @author Carlo D'Angelo
+ */
+public class MotionBuffer {
+
+  /**
+   * Turns (in degrees) and drives (in cm) smaller than this are dropped.
+   */
+  private static final double NO_OP = 0.01;
+
+  private final Navigation navigator;
+  private final Odometer odo;
+
+  private MotionCommand pending; // last motion, still open to merging
+  private MotionCommand lastQueued; // last motion handed to the navigator
+
+  // Pose at the end of the buffered motions (x, y in cm, theta in degrees)
+  private final double[] predicted = new double[3];
+
+  // Savings since the last reset
+  private double turnRequested, turnQueued;
+  private double distanceRequested, distanceQueued;
+  private int motionsRequested, motionsQueued;
+
+  /**
+   * Creates a buffer that hands its motions to a navigator.
+   *
+   * @param navigator navigator that runs the motions
+   * @param odo odometer, for the pose of the robot when the buffer starts from a still robot
+   */
+  MotionBuffer(Navigation navigator, Odometer odo) {
+    this.navigator = navigator;
+    this.odo = odo;
+  }
+
+  /**
+   * Adds a motion.
+   *
+   * @param command turn, drive or travel to add
+   */
+  synchronized void add(MotionCommand command) {
+    if (pending == null && (lastQueued == null || lastQueued.isDone())) {
+      odo.getXYT(predicted); // the robot is still, start from where it really is
+    }
+    switch (command.type) {
+      case MotionCommand.TURN:
+        motionsRequested++;
+        turnRequested += Math.abs(command.a);
+        addTurn(command.a, command.profile);
+        break;
+      case MotionCommand.FORWARD:
+      case MotionCommand.BACK:
+        motionsRequested++;
+        distanceRequested += Math.abs(command.a);
+        addDrive(command.type == MotionCommand.BACK ? -command.a : command.a, command.profile);
+        break;
+      case MotionCommand.TRAVEL:
+        addTravel(command);
+        break;
+      default:
+        flush();
+        queue(command);
+        break;
+    }
+  }
+
+  /**
+   * Hands the motion held back to the navigator.
+   */
+  synchronized void flush() {
+    if (pending != null) {
+      MotionCommand command = pending;
+      pending = null;
+      queue(command);
+    }
+  }
+
+  /**
+   * Clears the savings counts.
+   */
+  public synchronized void resetStatistics() {
+    turnRequested = turnQueued = 0;
+    distanceRequested = distanceQueued = 0;
+    motionsRequested = motionsQueued = 0;
+  }
+
+  /**
+   * @return turning (in degrees) saved since the statistics were reset
+   */
+  public synchronized double getTurnSaved() {
+    return turnRequested - turnQueued;
+  }
+
+  /**
+   * @return distance (in cm) saved since the statistics were reset
+   */
+  public synchronized double getDistanceSaved() {
+    return distanceRequested - distanceQueued;
+  }
+
+  /**
+   * @return number of motions (turns and drives) saved since the statistics were reset
+   */
+  public synchronized int getMotionsSaved() {
+    return motionsRequested - motionsQueued;
+  }
+
+  /**
+   * Folds a turn into the pending turn, if any. Only a folded turn is brought between -180 and
+   * 180 degrees, the direction of a single turn is the caller's.
+   */
+  private void addTurn(double angle, MotionProfile profile) {
+    predicted[2] = ((predicted[2] + angle) % 360 + 360) % 360;
+    if (pending != null && pending.type == MotionCommand.TURN && pending.profile == profile) {
+      angle = minimalAngle(angle + pending.a);
+      pending = null;
+    } else {
+      flush();
+    }
+    if (Math.abs(angle) >= NO_OP) {
+      pending = new MotionCommand(MotionCommand.TURN, angle, 0, profile);
+    }
+  }
+
+  /**
+   * Merges a drive with the pending drive, if any.
+   *
+   * @param distance distance (in cm), negative backward
+   */
+  private void addDrive(double distance, MotionProfile profile) {
+    double heading = Math.toRadians(predicted[2]);
+    predicted[0] += distance * Math.sin(heading);
+    predicted[1] += distance * Math.cos(heading);
+    if (pending != null && pending.profile == profile
+        && (pending.type == MotionCommand.FORWARD || pending.type == MotionCommand.BACK)) {
+      distance += pending.type == MotionCommand.BACK ? -pending.a : pending.a;
+      pending = null;
+    } else {
+      flush();
+    }
+    if (Math.abs(distance) >= NO_OP) {
+      pending = new MotionCommand(distance > 0 ? MotionCommand.FORWARD : MotionCommand.BACK,
+          Math.abs(distance), 0, profile);
+    }
+  }
+
+  /**
+   * Splits the turn out of a travelTo(), computed from the predicted pose like travelTo() does.
+   */
+  private void addTravel(MotionCommand command) {
+    double deltaX = command.a * Navigation.TILE_SIZE - predicted[0];
+    double deltaY = command.b * Navigation.TILE_SIZE - predicted[1];
+    double turn = minimalAngle(Math.toDegrees(Math.atan2(deltaX, deltaY)) - predicted[2]);
+    double distance = Math.hypot(deltaX, deltaY);
+
+    motionsRequested += 2; // a turn and a drive
+    turnRequested += Math.abs(turn);
+    distanceRequested += distance;
+    addTurn(turn, command.profile);
+
+    flush();
+    queue(command);
+    predicted[0] += deltaX;
+    predicted[1] += deltaY;
+  }
+
+  /**
+   * Hands a motion to the navigator and counts it.
+   */
+  private void queue(MotionCommand command) {
+    switch (command.type) {
+      case MotionCommand.TURN:
+        motionsQueued++;
+        turnQueued += Math.abs(command.a);
+        break;
+      case MotionCommand.FORWARD:
+      case MotionCommand.BACK:
+        motionsQueued++;
+        distanceQueued += command.a;
+        break;
+      case MotionCommand.TRAVEL:
+        motionsQueued++; // the drive, the turn was queued before it
+        distanceQueued += Math.hypot(command.a * Navigation.TILE_SIZE - predicted[0],
+            command.b * Navigation.TILE_SIZE - predicted[1]);
+        break;
+      default:
+        break;
+    }
+    lastQueued = command;
+    navigator.enqueue(command);
+  }
+
+  /**
+   * Brings an angle between -180 and 180 degrees.
+   */
+  private static double minimalAngle(double angle) {
+    angle %= 360;
+    if (angle > 180) {
+      angle -= 360;
+    } else if (angle <= -180) {
+      angle += 360;
+    }
+    return angle;
+  }
+
+}
@@ -0,0 +1,86 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * A motion queued on the {@link Navigation} motion thread. The object returned when a motion is
+ * submitted is also its completion handle: {@link #await()} blocks until the motion thread has
+ * finished executing it.
+ *
+ * @author Carlo D'Angelo
+ */
+public class MotionCommand {
+
+  /**
+   * Rotation in place, first argument is the angle (in degrees).
+   */
+  static final int TURN = 0;
+
+  /**
+   * Straight drive forward, first argument is the distance (in cm).
+   */
+  static final int FORWARD = 1;
+
+  /**
+   * Straight drive backward, first argument is the distance (in cm).
+   */
+  static final int BACK = 2;
+
+  /**
+   * Turn and drive to a grid point, arguments are its x and y (in tiles). The turn is computed
+   * from the pose at the time the command runs, not at the time it was submitted.
+   */
+  static final int TRAVEL = 3;
+
+  /**
+   * No motion, only used to wait for the commands queued before it.
+   */
+  static final int SYNC = 4;
+
+  final int type;
+  final double a;
+  final double b;
+  final MotionProfile profile;
+  private boolean done = false;
+
+  /**
+   * Creates a command.
+   * @param type one of the command types
+   * @param a first argument
+   * @param b second argument (only used by TRAVEL)
+   * @param profile motion profile, or null for the usual one of the motion
+   */
+  MotionCommand(int type, double a, double b, MotionProfile profile) {
+    this.type = type;
+    this.a = a;
+    this.b = b;
+    this.profile = profile;
+  }
+
+  /**
+   * Called by the motion thread once the command has been executed.
+   */
+  final synchronized void complete() {
+    done = true;
+    notifyAll();
+  }
+
+  /**
+   * Blocks the calling thread until the motion is over.
+   */
+  public synchronized void await() {
+    try {
+      while (!done) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return true if the motion is over
+   */
+  public synchronized boolean isDone() {
+    return done;
+  }
+
+}
@@ -0,0 +1,351 @@
+package ca.mcgill.ecse211.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Predicts how long the motions of the {@link Navigation} take, so that routes and search
+ * strategies can be compared by time before they are run.
+ * <p>
+ * Turns and drives are timed from the motion profiles Navigation uses for them, light
+ * localizations from the speeds and pauses of the LightLocalizer, the threshold method and the
+ * LineDetector sweep apart since they spin differently. Each of the four primitives then has a
+ * scale factor, the ratio of the measured to the predicted time of the motions
+ * recorded so far. Navigation and LightLocalizer record their motions when they are given the
+ * model, and the totals can be saved after a run and loaded at the start of the next one, so that
+ * the estimates are calibrated against all the logged runs.
+ *
+ * @author Carlo D'Angelo
+ */
+public class MotionCostModel {
+
+  /**
+   * Primitives of the model.
+   */
+  public static final int TURN = 0;
+  public static final int DRIVE = 1;
+  public static final int LOCALIZATION = 2;
+  public static final int SWEEP_LOCALIZATION = 3;
+  private static final String[] NAMES = {"turn", "drive", "localization", "sweep localization"};
+
+  /**
+   * Time (in seconds) added to every motion: queueing, the settling of the closed loop turns and
+   * the start of the motors.
+   */
+  private static final double MOTION_OVERHEAD = 0.05;
+
+  // Light localization, see LightLocalizer.lightLocalize()
+  private static final double SWEEP_FAST = 270; // robot degrees at ROTATION_SPEED
+  private static final double SWEEP_SLOW = 90; // robot degrees at ROTATION_SPEED_SLOW, last line
+  private static final double SWEEP_SPEED = 200; // wheel degrees/second
+  private static final double SWEEP_SPEED_SLOW = 85; // wheel degrees/second
+  private static final double LINE_PAUSE = 4 * 0.35; // s, pause after each of the 4 lines
+  private static final double CORRECTION_TURN = 45; // degrees, typical of each of the two turns
+  
+  // Light localization with the LineDetector, see LightLocalizer.sweepLocalize()
+  private static final double LINE_SCAN_SPEED = 300; // wheel degrees/second, one turn per sweep
+  private static final double APPROACH = 7; // cm, typical drive from the fitted pose to the point
+
+  private static final double TILE_SIZE = Navigation.TILE_SIZE;
+
+  private final double[] predicted = new double[NAMES.length];
+  private final double[] measured = new double[NAMES.length];
+  private final int[] count = new int[NAMES.length];
+  private volatile boolean lineDetector = false;
+
+
+  /**
+   * Time of a turn in place.
+   *
+   * @param angle angle of the turn (in degrees)
+   * @param profile motion profile, or null for the one Navigation uses for turns
+   * @return the time (in seconds)
+   */
+  public double estimateTurn(double angle, MotionProfile profile) {
+    return getScale(TURN) * predictTurn(angle, profile);
+  }
+
+  /**
+   * Time of a straight drive.
+   *
+   * @param distance distance (in cm)
+   * @param profile motion profile, or null for the one Navigation uses for drives
+   * @return the time (in seconds)
+   */
+  public double estimateDrive(double distance, MotionProfile profile) {
+    return getScale(DRIVE) * predictDrive(distance, profile);
+  }
+
+  /**
+   * Chooses which light localization estimateLocalization() times, as
+   * LightLocalizer.setLineDetector() does for the localization itself.
+   *
+   * @param enabled true for the LineDetector sweep
+   */
+  public void setLineDetector(boolean enabled) {
+    lineDetector = enabled;
+  }
+
+  /**
+   * Time of a light localization, from the start of the sweep to the final alignment.
+   *
+   * @return the time (in seconds)
+   */
+  public double estimateLocalization() {
+    if (lineDetector) {
+      return getScale(SWEEP_LOCALIZATION) * predictSweepLocalization(1);
+    }
+    return getScale(LOCALIZATION) * predictLocalization();
+  }
+
+  /**
+   * Time of a travelTo(), which then moves the pose to the destination, facing it.
+   *
+   * @param pose pose of the robot (x, y in cm, theta in degrees), updated
+   * @param x x coordinate of the destination (in tiles)
+   * @param y y coordinate of the destination (in tiles)
+   * @return the time (in seconds)
+   */
+  public double estimateTravel(double[] pose, double x, double y) {
+    double deltaX = x * TILE_SIZE - pose[0];
+    double deltaY = y * TILE_SIZE - pose[1];
+    double distance = Math.hypot(deltaX, deltaY);
+    if (distance == 0) {
+      return 0;
+    }
+    double heading = Math.toDegrees(Math.atan2(deltaX, deltaY));
+    double time = estimateTurn(Math.IEEEremainder(heading - pose[2], 360), null)
+        + estimateDrive(distance, null);
+    pose[0] = x * TILE_SIZE;
+    pose[1] = y * TILE_SIZE;
+    pose[2] = (heading + 360) % 360;
+    return time;
+  }
+
+  /**
+   * Time to follow a route with the {@link RouteFollower}, from its first waypoint.
+   *
+   * @param route route to follow
+   * @param heading heading of the robot at the start (in degrees)
+   * @return the time (in seconds)
+   */
+  public double estimateRoute(Route route, double heading) {
+    double[] pose = {route.getX(0) * TILE_SIZE, route.getY(0) * TILE_SIZE, heading};
+    double time = 0;
+    for (int i = 1; i < route.size(); i++) {
+      time += estimateTravel(pose, route.getX(i), route.getY(i));
+      if (route.isLocalization(i)) {
+        time += estimateTurn(Math.IEEEremainder(45 - pose[2], 360), null);
+        time += estimateLocalization();
+        pose[2] = 0;
+      }
+    }
+    return time;
+  }
+
+  /**
+   * Time of a whole trip with the planned routes: to the search zone, the search, back home and
+   * the off-loading of the cans.
+   *
+   * @param routes planned routes of the game
+   * @param searchTime time of the can search (in seconds), e.g., from estimateTravel() over the
+   *        points of the search
+   * @return the time (in seconds), infinite if a route is missing
+   */
+  public double estimateMission(RouteTable routes, double searchTime) {
+    Route toSearchZone = routes.getRoute(RouteTable.TO_SEARCH_ZONE);
+    if (toSearchZone == null) {
+      return Double.POSITIVE_INFINITY;
+    }
+    int last = toSearchZone.size() - 1;
+    Route home = routes.getRouteHome(toSearchZone.getX(last), toSearchZone.getY(last));
+    if (home == null) {
+      return Double.POSITIVE_INFINITY;
+    }
+    // see ReturnHome.goHomePlanned(), the robot starts and ends the search localized
+    double offloadHeading = routes.getStartHeading() + 225;
+    return estimateRoute(toSearchZone, routes.getStartHeading()) + searchTime
+        + estimateRoute(home, 0)
+        + estimateTurn(Math.IEEEremainder(offloadHeading, 360), null)
+        + 2 * estimateDrive(ReturnHome.CANDROP_DISTANCE, null)
+        + estimateTurn(Math.IEEEremainder(45 - offloadHeading, 360), null)
+        + estimateLocalization()
+        + estimateTurn(Math.IEEEremainder(routes.getStartHeading(), 360), null);
+  }
+
+  /**
+   * Records how long a motion took.
+   *
+   * @param primitive TURN, DRIVE, LOCALIZATION or SWEEP_LOCALIZATION
+   * @param predictedTime time predicted for the motion before calibration (in seconds)
+   * @param measuredTime time the motion took (in seconds)
+   */
+  public synchronized void record(int primitive, double predictedTime, double measuredTime) {
+    predicted[primitive] += predictedTime;
+    measured[primitive] += measuredTime;
+    count[primitive]++;
+  }
+
+  /**
+   * Records how long a motion of the navigator took.
+   *
+   * @param command motion
+   * @param pose pose of the robot at the start of the motion (x, y in cm, theta in degrees)
+   * @param measuredTime time the motion took (in seconds)
+   */
+  void record(MotionCommand command, double[] pose, double measuredTime) {
+    switch (command.type) {
+      case MotionCommand.TURN:
+        record(TURN, predictTurn(command.a, command.profile), measuredTime);
+        break;
+      case MotionCommand.FORWARD:
+      case MotionCommand.BACK:
+        record(DRIVE, predictDrive(command.a, command.profile), measuredTime);
+        break;
+      case MotionCommand.TRAVEL:
+        // a turn and a drive, the measured time is shared in proportion to their prediction
+        double deltaX = command.a * TILE_SIZE - pose[0];
+        double deltaY = command.b * TILE_SIZE - pose[1];
+        double heading = Math.toDegrees(Math.atan2(deltaX, deltaY));
+        double turn = predictTurn(Math.IEEEremainder(heading - pose[2], 360), command.profile);
+        double drive = predictDrive(Math.hypot(deltaX, deltaY), command.profile);
+        if (turn + drive == 0) {
+          break; // already there
+        }
+        record(TURN, turn, measuredTime * turn / (turn + drive));
+        record(DRIVE, drive, measuredTime * drive / (turn + drive));
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Records how long a light localization with the threshold method took.
+   *
+   * @param measuredTime time of the localization (in seconds)
+   */
+  public void recordLocalization(double measuredTime) {
+    record(LOCALIZATION, predictLocalization(), measuredTime);
+  }
+
+  /**
+   * Records how long a light localization with the LineDetector took.
+   *
+   * @param sweeps number of turns the robot made
+   * @param measuredTime time of the localization (in seconds)
+   */
+  public void recordSweepLocalization(int sweeps, double measuredTime) {
+    record(SWEEP_LOCALIZATION, predictSweepLocalization(sweeps), measuredTime);
+  }
+
+  /**
+   * @param primitive TURN, DRIVE, LOCALIZATION or SWEEP_LOCALIZATION
+   * @return ratio of the measured to the predicted time of the recorded motions, 1 if none
+   */
+  public synchronized double getScale(int primitive) {
+    return predicted[primitive] > 0 ? measured[primitive] / predicted[primitive] : 1;
+  }
+
+  /**
+   * @param primitive TURN, DRIVE, LOCALIZATION or SWEEP_LOCALIZATION
+   * @return number of motions recorded
+   */
+  public synchronized int getCount(int primitive) {
+    return count[primitive];
+  }
+
+  /**
+   * Writes the totals of the recorded motions as a CSV file, one primitive per line.
+   *
+   * @param fileName name of the file to write
+   * @throws IOException
+   */
+  public synchronized void save(String fileName) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(fileName));
+    try {
+      out.println("primitive,count,predicted_s,measured_s,scale");
+      for (int i = 0; i < NAMES.length; i++) {
+        out.println(NAMES[i] + "," + count[i] + "," + predicted[i] + "," + measured[i] + ","
+            + getScale(i));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Adds the totals saved by save(), e.g., by the previous runs.
+   *
+   * @param fileName name of the file to read
+   * @return false if there is no such file
+   * @throws IOException
+   */
+  public synchronized boolean load(String fileName) throws IOException {
+    File file = new File(fileName);
+    if (!file.exists()) {
+      return false;
+    }
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      in.readLine(); // header
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split(",");
+        for (int i = 0; i < NAMES.length; i++) {
+          if (NAMES[i].equals(fields[0])) {
+            count[i] += Integer.parseInt(fields[1]);
+            predicted[i] += Double.parseDouble(fields[2]);
+            measured[i] += Double.parseDouble(fields[3]);
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      throw new IOException("Bad line in " + fileName, e);
+    } finally {
+      in.close();
+    }
+    return true;
+  }
+
+  private static double predictTurn(double angle, MotionProfile profile) {
+    if (angle == 0) {
+      return 0;
+    }
+    if (profile == null) {
+      profile = MotionProfile.TURN;
+    }
+    return MOTION_OVERHEAD
+        + profile.duration(Navigation.convertAngle(Robot.WHEEL_RAD, Robot.TRACK, angle));
+  }
+
+  private static double predictDrive(double distance, MotionProfile profile) {
+    if (distance == 0) {
+      return 0;
+    }
+    if (profile == null) {
+      profile = MotionProfile.DRIVE;
+    }
+    return MOTION_OVERHEAD + profile.duration(Navigation.convertDistance(Robot.WHEEL_RAD, distance));
+  }
+
+  private static double predictLocalization() {
+    double sweep = Navigation.convertAngle(Robot.WHEEL_RAD, Robot.TRACK, SWEEP_FAST) / SWEEP_SPEED
+        + Navigation.convertAngle(Robot.WHEEL_RAD, Robot.TRACK, SWEEP_SLOW) / SWEEP_SPEED_SLOW;
+    return sweep + LINE_PAUSE
+        + 2 * predictTurn(CORRECTION_TURN, MotionProfile.PRECISE)
+        + predictDrive(LightLocalizer.LIGHT_LOC_DISTANCE, MotionProfile.PRECISE);
+  }
+
+  private static double predictSweepLocalization(int sweeps) {
+    double sweep = Navigation.convertAngle(Robot.WHEEL_RAD, Robot.TRACK, 360) / LINE_SCAN_SPEED;
+    return sweeps * (MOTION_OVERHEAD + sweep)
+        + predictDrive(APPROACH, MotionProfile.PRECISE)
+        + predictTurn(CORRECTION_TURN, MotionProfile.PRECISE);
+  }
+
+}
@@ -0,0 +1,108 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Trapezoidal velocity profile for a motion of the wheels: accelerate, cruise, then decelerate,
+ * within a speed and an acceleration limit. When the motion is too short to reach the speed
+ * limit, the profile is a triangle and the peak speed is sqrt(acceleration * distance).
+ * <p>
+ * All the values are in degrees of wheel rotation (degrees, degrees/second, degrees/second^2), the
+ * units of the motors.
+ *
+ * @author Carlo D'Angelo
+ */
+public class MotionProfile {
+
+  /**
+   * Straight drives between points. Long drives (tunnels, crossing the field) reach a much
+   * higher speed than the old fixed 250 degrees/second.
+   */
+  public static final MotionProfile DRIVE = new MotionProfile(450, 1000);
+
+  /**
+   * Turns in place during the navigation.
+   */
+  public static final MotionProfile TURN = new MotionProfile(150, 600);
+
+  /**
+   * Slow, gentle motions where precision matters more than time: the approach of a can and the
+   * final alignment on a localization point.
+   */
+  public static final MotionProfile PRECISE = new MotionProfile(100, 500);
+
+  private final int maxSpeed;
+  private final int acceleration;
+
+  /**
+   * Creates a profile.
+   *
+   * @param maxSpeed speed limit (in degrees/second)
+   * @param acceleration acceleration and deceleration (in degrees/second^2)
+   */
+  public MotionProfile(int maxSpeed, int acceleration) {
+    this.maxSpeed = maxSpeed;
+    this.acceleration = acceleration;
+  }
+
+  /**
+   * Speed reached in the middle of a motion.
+   *
+   * @param degrees rotation of the wheels (in degrees)
+   * @return the cruise speed (in degrees/second)
+   */
+  public int cruiseSpeed(double degrees) {
+    double peak = Math.sqrt(acceleration * Math.abs(degrees));
+    return (int) Math.max(1, Math.min(maxSpeed, peak));
+  }
+
+  /**
+   * Time a motion takes, from the start of the acceleration to the end of the deceleration.
+   *
+   * @param degrees rotation of the wheels (in degrees)
+   * @return duration of the motion (in seconds)
+   */
+  public double duration(double degrees) {
+    degrees = Math.abs(degrees);
+    double peak = Math.sqrt(acceleration * degrees);
+    if (peak <= maxSpeed) { // triangle
+      return 2 * peak / acceleration;
+    }
+    // ramps take maxSpeed / acceleration each and cover maxSpeed^2 / acceleration together
+    return degrees / maxSpeed + (double) maxSpeed / acceleration;
+  }
+
+  /**
+   * Sets the speed and acceleration of the wheels for a motion. The wheels may turn by different
+   * amounts (arcs), both are scaled so that they start and stop together.
+   *
+   * @param wheels motors of the wheels of robot
+   * @param leftDegrees rotation of the left wheel (in degrees)
+   * @param rightDegrees rotation of the right wheel (in degrees)
+   */
+  public void apply(MotorPair wheels, double leftDegrees, double rightDegrees) {
+    double longest = Math.max(Math.abs(leftDegrees), Math.abs(rightDegrees));
+    if (longest == 0) {
+      return;
+    }
+    double speed = cruiseSpeed(longest);
+    double leftRatio = Math.abs(leftDegrees) / longest;
+    double rightRatio = Math.abs(rightDegrees) / longest;
+    wheels.setAcceleration((int) Math.max(1, acceleration * leftRatio),
+        (int) Math.max(1, acceleration * rightRatio));
+    wheels.setSpeed((float) Math.max(1, speed * leftRatio), (float) Math.max(1, speed * rightRatio));
+  }
+
+  /**
+   * @return speed limit (in degrees/second)
+   */
+  public int getMaxSpeed() {
+    return maxSpeed;
+  }
+
+  /**
+   * @return acceleration (in degrees/second^2)
+   */
+  public int getAcceleration() {
+    return acceleration;
+  }
+
+}
@@ -0,0 +1,165 @@
+package ca.mcgill.ecse211.model;
+
+import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import lejos.robotics.RegulatedMotor;
+
+/**
+ * The two wheel motors of the robot, commanded together. The right motor is synchronized with the
+ * left one (leJOS motor synchronization), so every command given through this class reaches both
+ * regulators on the same tick: the wheels start, change speed and stop at the same time instead of
+ * one leading the other by a call.
+ *
+ * @author Carlo D'Angelo
+ */
+public class MotorPair {
+
+  private final EV3LargeRegulatedMotor leftMotor;
+  private final EV3LargeRegulatedMotor rightMotor;
+
+  /**
+   * Creates the pair and synchronizes the right motor with the left one. There should be only one
+   * pair for the same motors.
+   *
+   * @param leftMotor left motor of robot
+   * @param rightMotor right motor of robot
+   */
+  public MotorPair(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor) {
+    this.leftMotor = leftMotor;
+    this.rightMotor = rightMotor;
+    leftMotor.synchronizeWith(new RegulatedMotor[] {rightMotor});
+  }
+
+  /**
+   * Sets the speed of both wheels.
+   *
+   * @param speed speed (in degrees/second)
+   */
+  public void setSpeed(float speed) {
+    setSpeed(speed, speed);
+  }
+
+  /**
+   * Sets the speed of each wheel.
+   *
+   * @param leftSpeed speed of the left wheel (in degrees/second)
+   * @param rightSpeed speed of the right wheel (in degrees/second)
+   */
+  public void setSpeed(float leftSpeed, float rightSpeed) {
+    leftMotor.startSynchronization();
+    leftMotor.setSpeed(leftSpeed);
+    rightMotor.setSpeed(rightSpeed);
+    leftMotor.endSynchronization();
+  }
+
+  /**
+   * Sets the acceleration of each wheel.
+   *
+   * @param leftAcceleration acceleration of the left wheel (in degrees/second^2)
+   * @param rightAcceleration acceleration of the right wheel (in degrees/second^2)
+   */
+  public void setAcceleration(int leftAcceleration, int rightAcceleration) {
+    leftMotor.startSynchronization();
+    leftMotor.setAcceleration(leftAcceleration);
+    rightMotor.setAcceleration(rightAcceleration);
+    leftMotor.endSynchronization();
+  }
+
+  /**
+   * Turns each wheel by an angle, both starting together.
+   *
+   * @param leftAngle rotation of the left wheel (in degrees)
+   * @param rightAngle rotation of the right wheel (in degrees)
+   * @param immediateReturn true to return right away, false to wait for both wheels to stop
+   */
+  public void rotate(int leftAngle, int rightAngle, boolean immediateReturn) {
+    leftMotor.startSynchronization();
+    leftMotor.rotate(leftAngle, true);
+    rightMotor.rotate(rightAngle, true);
+    leftMotor.endSynchronization();
+    if (!immediateReturn) {
+      waitComplete();
+    }
+  }
+
+  /**
+   * Drives both wheels forward until stopped.
+   */
+  public void forward() {
+    leftMotor.startSynchronization();
+    leftMotor.forward();
+    rightMotor.forward();
+    leftMotor.endSynchronization();
+  }
+
+  /**
+   * Drives both wheels backward until stopped.
+   */
+  public void backward() {
+    leftMotor.startSynchronization();
+    leftMotor.backward();
+    rightMotor.backward();
+    leftMotor.endSynchronization();
+  }
+
+  /**
+   * Rotates the robot in place, clockwise, until stopped.
+   */
+  public void turnClockwise() {
+    leftMotor.startSynchronization();
+    leftMotor.forward();
+    rightMotor.backward();
+    leftMotor.endSynchronization();
+  }
+
+  /**
+   * Rotates the robot in place, counterclockwise, until stopped.
+   */
+  public void turnCounterclockwise() {
+    leftMotor.startSynchronization();
+    leftMotor.backward();
+    rightMotor.forward();
+    leftMotor.endSynchronization();
+  }
+
+  /**
+   * Stops both wheels together and waits for them to stand still.
+   */
+  public void stop() {
+    leftMotor.startSynchronization();
+    leftMotor.stop(true);
+    rightMotor.stop(true);
+    leftMotor.endSynchronization();
+    waitComplete();
+  }
+
+  /**
+   * Waits for both wheels to finish their motion.
+   */
+  public void waitComplete() {
+    leftMotor.waitComplete();
+    rightMotor.waitComplete();
+  }
+
+  /**
+   * @return true while both wheels are turning; the robot stops driving as soon as one of them
+   *         stops
+   */
+  public boolean isMoving() {
+    return leftMotor.isMoving() && rightMotor.isMoving();
+  }
+
+  /**
+   * @return the left motor, for readings (tacho count, speed)
+   */
+  public EV3LargeRegulatedMotor getLeftMotor() {
+    return leftMotor;
+  }
+
+  /**
+   * @return the right motor, for readings (tacho count, speed)
+   */
+  public EV3LargeRegulatedMotor getRightMotor() {
+    return rightMotor;
+  }
+
+}
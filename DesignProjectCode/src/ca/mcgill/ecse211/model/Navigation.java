@@ -1,34 +1,99 @@
 package ca.mcgill.ecse211.model;
 
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
 import lejos.hardware.motor.EV3LargeRegulatedMotor;
 
 /**
  * This class contains all the methods that contribute to making
  * the robot move.
+ * <p>
+ * Motions are executed one after the other by a motion thread. The submit methods
+ * queue a motion and return right away with a {@link MotionCommand} that can be waited on,
+ * while turnTo(), driveForward(), driveBack() and travelTo() wait for the motion to be over
+ * (unless the navigator is pipelined, see {@link #setPipelined(boolean)}). While buffering,
+ * they also go through a {@link MotionBuffer} that merges and drops motions.
+ * <p>
+ * Speeds and accelerations come from a {@link MotionProfile}: {@link MotionProfile#DRIVE}
+ * and {@link MotionProfile#TURN} unless the caller asks for another one, e.g.,
+ * {@link MotionProfile#PRECISE}.
  * 
  * @author Carlo D'Angelo
  */
 public class Navigation {
 
   /**
-   * Rotation speed (in degrees/second) of the robot for the majority of the navigation.
+   * Speed (in degrees/second) of the robot when it scans the cans in the search zone.
    */
-  private static final int ROTATION_SPEED = 100;
+  private static final int SLOW_SPEED = 75;
   
   /**
-   * Speed (in degrees/second) of the robot when it scans the cans in the search zone.
+   * Speed (in degrees/second) of the robot when detecting the weight of the can (Touch Sensor).
    */
-  private static final int SLOW_SPEED = 75;
+  private static final int FORWARD_SPEED_WEIGHT = 550;
   
   /**
-   * Forward speed (in degrees/second) of the robot for the majority of the navigation.
+   * Acceleration (in degrees/second^2) of the motors outside of the profiled motions (leJOS
+   * default), which the localization and can weighing were tuned with.
    */
-  private static final int FORWARD_SPEED = 250;
+  private static final int DEFAULT_ACCELERATION = 6000;
   
   /**
-   * Speed (in degrees/second) of the robot when detecting the weight of the can (Touch Sensor).
+   * Radius (in cm) of the arcs followed by the center of the robot in arc travel mode.
    */
-  private static final int FORWARD_SPEED_WEIGHT = 550;
+  private static final double ARC_RADIUS = 15;
+  
+  /**
+   * Largest turn (in degrees) that travelTo() makes along an arc in arc travel mode. Sharper
+   * turns are still made in place.
+   */
+  private static final double MAX_ARC_TURN = 45;
+  
+  /**
+   * Gains of the heading controller of straight drives (see {@link HeadingController}).
+   */
+  private static final double HEADING_KP = 8;
+  private static final double HEADING_KI = 2;
+  private static final double HEADING_KD = 0.5;
+  
+  /**
+   * Largest difference of speed (in degrees/second) between the wheels when holding the heading.
+   */
+  private static final double MAX_HEADING_CORRECTION = 60;
+  
+  /**
+   * Period (in ms) of the heading control loop.
+   */
+  private static final long CONTROL_PERIOD = 10;
+  
+  /**
+   * Wheel speed (in degrees/second) of the final approach of a closed loop turn.
+   */
+  private static final int TURN_SLOW_SPEED = 40;
+  
+  /**
+   * Remaining angle (in degrees) under which a closed loop turn slows down.
+   */
+  private static final double SLOW_TURN_ZONE = 10;
+  
+  /**
+   * Default tolerance (in degrees) of closed loop turns.
+   */
+  private static final double DEFAULT_TURN_TOLERANCE = 0.5;
+  
+  /**
+   * Number of slow corrections a closed loop turn makes after the main turn if it is still
+   * off by more than the tolerance.
+   */
+  private static final int MAX_TURN_CORRECTIONS = 3;
+  
+  /**
+   * The heading is settled once it changes by less than this (in degrees) between two
+   * control periods, or after SETTLE_TIMEOUT (in ms).
+   */
+  private static final double SETTLE_THRESHOLD = 0.02;
+  private static final long SETTLE_TIMEOUT = 200;
   
   /**
    * Length and width of a tile (in cm).
@@ -39,7 +104,27 @@ public class Navigation {
   private final double TRACK = Robot.TRACK;
 
   private Odometer odo;
-  private EV3LargeRegulatedMotor leftMotor, rightMotor;
+  private MotorPair wheels;
+  private EV3LargeRegulatedMotor leftMotor, rightMotor; // for readings, commands go through wheels
+  private final double[] position = new double[3];
+  private OdometryCorrection correction;
+  private final BlockingQueue<MotionCommand> motions = new LinkedBlockingQueue<MotionCommand>();
+  private volatile boolean pipelined = false;
+  private volatile boolean buffering = false;
+  private final MotionBuffer buffer;
+  private volatile boolean arcTravel = false;
+  private final ArcTrajectory arc = new ArcTrajectory(ARC_RADIUS);
+  private volatile boolean headingHold = false;
+  private final HeadingController headingController =
+      new HeadingController(HEADING_KP, HEADING_KI, HEADING_KD, MAX_HEADING_CORRECTION);
+  private final double[] drivePose = new double[3];
+  private volatile boolean closedLoopTurns = false;
+  private volatile double turnTolerance = DEFAULT_TURN_TOLERANCE;
+  private volatile double lastTurnError = 0;
+  private double maxTurnError, turnErrorSquares; // closed loop turn telemetry
+  private int turnCount;
+  private volatile MotionCostModel costModel;
+  private final double[] startPose = new double[3]; // of the motion being timed
  
   /**
    * Minimum angle that the robot turns to when calling the travelTo() method.
@@ -48,15 +133,349 @@ public class Navigation {
 
   /**
    * This is the default constructor of this class.
-   * @param leftMotor left motor of robot
-   * @param rightMotor right motor of robot
+   * @param wheels motors of the wheels of robot
    * @throws OdometerExceptions
    */
-  public Navigation(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor) throws OdometerExceptions {
+  public Navigation(MotorPair wheels) throws OdometerExceptions {
 	odo = Odometer.getOdometer();
-	this.leftMotor = leftMotor;
-	this.rightMotor = rightMotor;
+	this.wheels = wheels;
+	this.leftMotor = wheels.getLeftMotor();
+	this.rightMotor = wheels.getRightMotor();
+	buffer = new MotionBuffer(this, odo);
+	Thread motionThread = new Thread(new MotionExecutor(), "motion");
+	motionThread.setDaemon(true);
+	motionThread.start();
+	}
+  
+  /**
+   * Runs the queued motions back to back.
+   */
+  private class MotionExecutor implements Runnable {
+	public void run() {
+	  while (true) {
+		MotionCommand command;
+		try {
+		  command = motions.take();
+		} catch (InterruptedException e) {
+		  return;
+		}
+		try {
+		  MotionCostModel model = costModel;
+		  if (model != null) {
+			odo.getXYT(startPose);
+		  }
+		  long start = System.nanoTime();
+		  execute(command);
+		  if (model != null) {
+			model.record(command, startPose, (System.nanoTime() - start) / 1e9);
+		  }
+		  wheels.setAcceleration(DEFAULT_ACCELERATION, DEFAULT_ACCELERATION);
+		} finally {
+		  command.complete();
+		}
+	  }
+	}
+  }
+  
+  /**
+   * Executes a motion on the motion thread.
+   * @param command motion to execute
+   */
+  private void execute(MotionCommand command) {
+	switch (command.type) {
+	  case MotionCommand.TURN:
+		doTurnTo(command.a, command.profile);
+		break;
+	  case MotionCommand.FORWARD:
+		doDriveForward(command.a, command.profile);
+		break;
+	  case MotionCommand.BACK:
+		doDriveBack(command.a, command.profile);
+		break;
+	  case MotionCommand.TRAVEL:
+		doTravelTo(command.a, command.b, command.profile);
+		break;
+	  default:
+		break; // SYNC: nothing to do
+	}
+  }
+  
+  /**
+   * Queues a motion for the motion thread, as is.
+   * @param command motion to queue
+   */
+  void enqueue(MotionCommand command) {
+	motions.add(command);
+  }
+  
+  /**
+   * Queues a motion for the motion thread, after the motion held by the buffer if any.
+   * @param command motion to queue
+   * @return the same command, to wait on
+   */
+  private MotionCommand submit(MotionCommand command) {
+	buffer.flush();
+	enqueue(command);
+	return command;
+  }
+  
+  /**
+   * Queues a motion and, unless the navigator is pipelined or buffering, waits for it to
+   * be over.
+   * @param command motion to queue
+   */
+  private void run(MotionCommand command) {
+	if (buffering) {
+	  buffer.add(command);
+	  return;
+	}
+	submit(command);
+	if (!pipelined) {
+	  command.await();
+	}
+  }
+  
+  /**
+   * While buffering, turnTo(), driveForward(), driveBack() and travelTo() go through the
+   * motion buffer, which folds turns, merges drives and drops motions that do nothing; they
+   * do not wait for the motion, as if pipelined. waitForMotion() and the submit methods run
+   * what the buffer holds first. Turning buffering on resets the buffer's statistics and
+   * turning it off runs what it holds, so the statistics of a route are complete once it
+   * is off, until the next route turns it on.
+   * @param buffering true to buffer the motions
+   */
+  public void setBuffering(boolean buffering) {
+	if (buffering) {
+	  buffer.resetStatistics();
+	} else {
+	  buffer.flush();
+	}
+	this.buffering = buffering;
+  }
+  
+  /**
+   * @return the motion buffer, for its statistics
+   */
+  public MotionBuffer getMotionBuffer() {
+	return buffer;
+  }
+  
+  /**
+   * When pipelined, turnTo(), driveForward(), driveBack() and travelTo() only queue the
+   * motion and return, so the next motion starts as soon as the previous one is over.
+   * Code that needs the robot to be still (localization, the clamp, ...) must call
+   * {@link #waitForMotion()} first. Turning pipelining off waits for the queued motions.
+   * @param pipelined true to stop waiting for the motions
+   */
+  public void setPipelined(boolean pipelined) {
+	this.pipelined = pipelined;
+	if (!pipelined) {
+	  waitForMotion();
 	}
+  }
+  
+  /**
+   * In arc travel mode, travelTo() turns while it drives when the turn is small enough,
+   * instead of stopping to turn in place. It still ends facing the destination, so
+   * turnTo(-minAng) undoes its turn as usual.
+   * @param arcTravel true to follow arcs
+   */
+  public void setArcTravel(boolean arcTravel) {
+	this.arcTravel = arcTravel;
+  }
+  
+  /**
+   * With heading hold, straight drives are steered by a PID controller that keeps the
+   * heading the robot had when the drive started, instead of trusting both wheels to turn
+   * at exactly the same speed. The drive then ends when the estimated braking distance
+   * reaches what is left of it, checked every CONTROL_PERIOD ms, rather than on the
+   * regulator's rotate target, so its length depends on the acceleration of the wheels.
+   * @param headingHold true to hold the heading during straight drives
+   */
+  public void setHeadingHold(boolean headingHold) {
+	this.headingHold = headingHold;
+  }
+  
+  /**
+   * @return true if straight drives hold their heading
+   */
+  public boolean isHeadingHold() {
+	return headingHold;
+  }
+  
+  /**
+   * In closed loop mode, turnTo() watches the heading reported by the odometer: it turns fast,
+   * slows down near the target and corrects until it is within the tolerance, instead of
+   * trusting the conversion of the angle into wheel rotations.
+   * @param closedLoopTurns true to turn in closed loop
+   */
+  public void setClosedLoopTurns(boolean closedLoopTurns) {
+	this.closedLoopTurns = closedLoopTurns;
+  }
+  
+  /**
+   * Sets how close to the requested angle closed loop turns finish.
+   * @param tolerance tolerance (in degrees)
+   */
+  public void setTurnTolerance(double tolerance) {
+	this.turnTolerance = tolerance;
+  }
+  
+  /**
+   * @return requested minus achieved angle (in degrees) of the last closed loop turn, once the
+   *         robot settled
+   */
+  public double getLastTurnError() {
+	return lastTurnError;
+  }
+  
+  /**
+   * Clears the telemetry of the closed loop turns.
+   */
+  public synchronized void resetTurnTelemetry() {
+	maxTurnError = 0;
+	turnErrorSquares = 0;
+	turnCount = 0;
+  }
+  
+  /**
+   * @return largest error (in degrees) of the closed loop turns since the telemetry was reset
+   */
+  public synchronized double getMaxTurnError() {
+	return maxTurnError;
+  }
+  
+  /**
+   * @return root mean square error (in degrees) of the closed loop turns since the telemetry
+   *         was reset
+   */
+  public synchronized double getRmsTurnError() {
+	return turnCount == 0 ? 0 : Math.sqrt(turnErrorSquares / turnCount);
+  }
+  
+  /**
+   * @return number of closed loop turns since the telemetry was reset
+   */
+  public synchronized int getTurnCount() {
+	return turnCount;
+  }
+  
+  /**
+   * @return the heading controller of straight drives, to tune its gains or read its
+   *         cross-track error telemetry
+   */
+  public HeadingController getHeadingController() {
+	return headingController;
+  }
+  
+  /**
+   * Blocks until all the motions queued so far are over.
+   */
+  public void waitForMotion() {
+	submit(new MotionCommand(MotionCommand.SYNC, 0, 0, null)).await();
+  }
+  
+  /**
+   * Queues a travelTo() and returns right away.
+   * @param x x coordinate of desired destination
+   * @param y y coordinate of desired destination
+   * @return handle to wait for the motion
+   */
+  public MotionCommand submitTravelTo(double x, double y) {
+	return submitTravelTo(x, y, null);
+  }
+  
+  /**
+   * Queues a travelTo() with the given motion profile and returns right away.
+   * @param x x coordinate of desired destination
+   * @param y y coordinate of desired destination
+   * @param profile speed and acceleration limits, or null for the usual ones
+   * @return handle to wait for the motion
+   */
+  public MotionCommand submitTravelTo(double x, double y, MotionProfile profile) {
+	return submit(new MotionCommand(MotionCommand.TRAVEL, x, y, profile));
+  }
+  
+  /**
+   * Queues a turnTo() and returns right away.
+   * @param theta angle amount (in degrees) that you want the robot to rotate in place
+   * @return handle to wait for the motion
+   */
+  public MotionCommand submitTurnTo(double theta) {
+	return submitTurnTo(theta, null);
+  }
+  
+  /**
+   * Queues a turnTo() with the given motion profile and returns right away.
+   * @param theta angle amount (in degrees) that you want the robot to rotate in place
+   * @param profile speed and acceleration limits, or null for the usual ones
+   * @return handle to wait for the motion
+   */
+  public MotionCommand submitTurnTo(double theta, MotionProfile profile) {
+	return submit(new MotionCommand(MotionCommand.TURN, theta, 0, profile));
+  }
+  
+  /**
+   * Queues a driveForward() and returns right away.
+   * @param distance distance that you want the robot to travel forward
+   * @return handle to wait for the motion
+   */
+  public MotionCommand submitDriveForward(double distance) {
+	return submitDriveForward(distance, null);
+  }
+  
+  /**
+   * Queues a driveForward() with the given motion profile and returns right away.
+   * @param distance distance that you want the robot to travel forward
+   * @param profile speed and acceleration limits, or null for the usual ones
+   * @return handle to wait for the motion
+   */
+  public MotionCommand submitDriveForward(double distance, MotionProfile profile) {
+	return submit(new MotionCommand(MotionCommand.FORWARD, distance, 0, profile));
+  }
+  
+  /**
+   * Queues a driveBack() and returns right away.
+   * @param distance distance that you want the robot to travel backward
+   * @return handle to wait for the motion
+   */
+  public MotionCommand submitDriveBack(double distance) {
+	return submitDriveBack(distance, null);
+  }
+  
+  /**
+   * Queues a driveBack() with the given motion profile and returns right away.
+   * @param distance distance that you want the robot to travel backward
+   * @param profile speed and acceleration limits, or null for the usual ones
+   * @return handle to wait for the motion
+   */
+  public MotionCommand submitDriveBack(double distance, MotionProfile profile) {
+	return submit(new MotionCommand(MotionCommand.BACK, distance, 0, profile));
+  }
+  
+  /**
+   * Sets the model the turns and drives are timed into, to calibrate it.
+   * @param costModel cost model, or null to stop timing the motions
+   */
+  public void setCostModel(MotionCostModel costModel) {
+	this.costModel = costModel;
+  }
+  
+  /**
+   * @return the cost model the motions are timed into, or null
+   */
+  public MotionCostModel getCostModel() {
+	return costModel;
+  }
+  
+  /**
+   * Sets the odometry correction to run while the robot drives straight (driveForward(),
+   * driveBack() and the straight part of travelTo()).
+   * @param correction grid line correction, or null for none
+   */
+  public void setOdometryCorrection(OdometryCorrection correction) {
+	this.correction = correction;
+  }
   
   /**
    * Method that allows robot to travel from its current position to any other point.
@@ -64,13 +483,34 @@ public class Navigation {
    * @param y y coordinate of desired destination
    */
   public void travelTo(double x, double y) {
-	double currentX = odo.getXYT()[0];
-	double currentY = odo.getXYT()[1];
+	travelTo(x, y, null);
+  }
+  
+  /**
+   * Same as travelTo(), with the given motion profile.
+   * @param x x coordinate of desired destination
+   * @param y y coordinate of desired destination
+   * @param profile speed and acceleration limits, or null for the usual ones
+   */
+  public void travelTo(double x, double y, MotionProfile profile) {
+	run(new MotionCommand(MotionCommand.TRAVEL, x, y, profile));
+  }
+  
+  /**
+   * Executes travelTo() on the motion thread.
+   * @param x x coordinate of desired destination
+   * @param y y coordinate of desired destination
+   * @param profile motion profile of the turn and the drive, or null for the usual ones
+   */
+  private void doTravelTo(double x, double y, MotionProfile profile) {
+	odo.getXYT(position);
+	double currentX = position[0];
+	double currentY = position[1];
 
 	double deltaX = x * TILE_SIZE - currentX;
 	double deltaY = y * TILE_SIZE - currentY;
 	
-	double currentA = odo.getXYT()[2];
+	double currentA = position[2];
 	
 	// find minimum angle
 	minAng = -currentA + Math.atan2(deltaX, deltaY) * 180 / Math.PI;
@@ -81,11 +521,24 @@ public class Navigation {
 	}else if (minAng > 0 && (Math.abs(minAng) >= 180)){
 		minAng -= 360;
 	}
-	turnTo(minAng);
+	if (arcTravel && Math.abs(minAng) <= MAX_ARC_TURN) {
+	  // destination in the frame of the robot: x to its right, y ahead
+	  double heading = Math.toRadians(currentA);
+	  double ahead = deltaX * Math.sin(heading) + deltaY * Math.cos(heading);
+	  double right = deltaX * Math.cos(heading) - deltaY * Math.sin(heading);
+	  if (arc.plan(right, ahead) && arc.getAngle() != 0) { // nothing to gain when facing it
+		driveArc(arc.getAngle(), arc.getArcLength(), profile);
+		doDriveForward(arc.getStraight(), profile);
+		doTurnTo(minAng - arc.getAngle(), profile); // face the destination, as after turning in place
+		return;
+	  }
+	}
+	
+	doTurnTo(minAng, profile);
 	
 	double distance = Math.hypot(deltaX, deltaY);
 	
-	driveForward(distance);
+	doDriveForward(distance, profile);
 	
   }
 
@@ -94,12 +547,146 @@ public class Navigation {
    * @param theta angle amount (in degrees) that you want the robot to rotate in place
    */
   public void turnTo(double theta) {
+	turnTo(theta, null);
+  }
+  
+  /**
+   * Same as turnTo(), with the given motion profile.
+   * @param theta angle amount (in degrees) that you want the robot to rotate in place
+   * @param profile speed and acceleration limits, or null for the usual ones
+   */
+  public void turnTo(double theta, MotionProfile profile) {
+	run(new MotionCommand(MotionCommand.TURN, theta, 0, profile));
+  }
+  
+  /**
+   * Executes turnTo() on the motion thread.
+   * @param theta angle amount (in degrees) that you want the robot to rotate in place
+   * @param profile motion profile, or null for MotionProfile.TURN
+   */
+  private void doTurnTo(double theta, MotionProfile profile) {
 	odo.sleepOdometer();
-	leftMotor.setSpeed(ROTATION_SPEED);
-	rightMotor.setSpeed(ROTATION_SPEED);
+	int rotation = convertAngle(RADIUS, TRACK, theta);
+	if (profile == null) {
+	  profile = MotionProfile.TURN;
+	}
+	profile.apply(wheels, rotation, rotation);
 	
-	leftMotor.rotate(convertAngle(RADIUS, TRACK, theta), true);
-    rightMotor.rotate(-convertAngle(RADIUS, TRACK, theta), false);
+	if (closedLoopTurns) {
+	  closedLoopTurn(theta, profile);
+	  return;
+	}
+	wheels.rotate(rotation, -rotation, false);
+  }
+  
+  /**
+   * Turns in place by an angle measured by the odometer. The first pass turns at the cruise
+   * speed of the profile and slows down for the last SLOW_TURN_ZONE degrees; it stops the
+   * wheels early enough for the braking to end on the target. Once the heading settles, slow
+   * corrections follow while the error is over the tolerance.
+   * @param theta angle (in degrees, positive clockwise) to turn by
+   * @param profile motion profile, already applied to the motors
+   */
+  private void closedLoopTurn(double theta, MotionProfile profile) {
+	double previous = odo.getXYT(drivePose)[2];
+	double turned = 0; // unwrapped, so that turns over 180 degrees work too
+	double tolerance = turnTolerance;
+	double wheelToRobot = 2 * RADIUS / TRACK; // robot degrees per wheel degree
+	double brake = 2.0 * profile.getAcceleration();
+	int fast = profile.cruiseSpeed(convertAngle(RADIUS, TRACK, theta));
+	
+	for (int pass = 0; pass <= MAX_TURN_CORRECTIONS; pass++) {
+	  double remaining = theta - turned;
+	  if (Math.abs(remaining) <= tolerance) {
+		break;
+	  }
+	  int direction = remaining > 0 ? 1 : -1;
+	  int speed = pass == 0 && Math.abs(remaining) > SLOW_TURN_ZONE ? fast : TURN_SLOW_SPEED;
+	  wheels.setSpeed(speed);
+	  if (direction > 0) {
+		wheels.turnClockwise();
+	  } else {
+		wheels.turnCounterclockwise();
+	  }
+	  
+	  while (true) {
+		try {
+		  Thread.sleep(CONTROL_PERIOD);
+		} catch (InterruptedException e) {
+		  break;
+		}
+		double heading = odo.getXYT(drivePose)[2];
+		turned += HeadingController.headingError(heading, previous);
+		previous = heading;
+		remaining = theta - turned;
+		
+		double current = (Math.abs(leftMotor.getRotationSpeed())
+			+ Math.abs(rightMotor.getRotationSpeed())) / 2.0;
+		if (direction * remaining <= current * current / brake * wheelToRobot) {
+		  break; // stop now to end on the target (or already past it)
+		}
+		if (speed != TURN_SLOW_SPEED && Math.abs(remaining) < SLOW_TURN_ZONE) {
+		  speed = TURN_SLOW_SPEED;
+		  wheels.setSpeed(speed);
+		}
+		if (!wheels.isMoving()) {
+		  break; // stalled
+		}
+	  }
+	  wheels.stop();
+	  
+	  // wait for the heading to settle before measuring the error
+	  long end = System.currentTimeMillis() + SETTLE_TIMEOUT;
+	  while (System.currentTimeMillis() < end) {
+		try {
+		  Thread.sleep(CONTROL_PERIOD);
+		} catch (InterruptedException e) {
+		  break;
+		}
+		double heading = odo.getXYT(drivePose)[2];
+		double change = HeadingController.headingError(heading, previous);
+		turned += change;
+		previous = heading;
+		if (Math.abs(change) < SETTLE_THRESHOLD) {
+		  break;
+		}
+	  }
+	}
+	lastTurnError = theta - turned;
+	recordTurnError(lastTurnError);
+  }
+  
+  /**
+   * Adds the error of a closed loop turn to the telemetry.
+   * @param error requested minus achieved angle (in degrees)
+   */
+  private synchronized void recordTurnError(double error) {
+	maxTurnError = Math.max(maxTurnError, Math.abs(error));
+	turnErrorSquares += error * error;
+	turnCount++;
+  }
+  
+  /**
+   * Drives along an arc of radius ARC_RADIUS. The outer wheel follows the motion
+   * profile and the inner one is scaled down so that they start and stop together.
+   * @param angle turn made along the arc (in degrees, positive clockwise)
+   * @param length length of the arc at the center of the robot
+   * @param profile motion profile, or null for MotionProfile.DRIVE
+   */
+  private void driveArc(double angle, double length, MotionProfile profile) {
+	odo.sleepOdometer();
+	double outer = (ARC_RADIUS + TRACK / 2) / ARC_RADIUS;
+	double inner = (ARC_RADIUS - TRACK / 2) / ARC_RADIUS;
+	double left = angle > 0 ? outer : inner; // turning right: left wheel outside
+	double right = angle > 0 ? inner : outer;
+	int leftRotation = convertDistance(RADIUS, length * left);
+	int rightRotation = convertDistance(RADIUS, length * right);
+	if (profile == null) {
+	  profile = MotionProfile.DRIVE;
+	}
+	profile.apply(wheels, leftRotation, rightRotation);
+	
+	wheels.rotate(leftRotation, rightRotation, false);
   }
   
   /**
@@ -107,12 +694,38 @@ public class Navigation {
    * @param distance distance that you want the robot to travel backward
    */
   public void driveBack(double distance) {
+	driveBack(distance, null);
+  }
+  
+  /**
+   * Same as driveBack(), with the given motion profile.
+   * @param distance distance that you want the robot to travel backward
+   * @param profile speed and acceleration limits, or null for the usual ones
+   */
+  public void driveBack(double distance, MotionProfile profile) {
+	run(new MotionCommand(MotionCommand.BACK, distance, 0, profile));
+  }
+  
+  /**
+   * Executes driveBack() on the motion thread.
+   * @param distance distance that you want the robot to travel backward
+   * @param profile motion profile, or null for MotionProfile.DRIVE
+   */
+  private void doDriveBack(double distance, MotionProfile profile) {
 	odo.sleepOdometer();
-	leftMotor.setSpeed(FORWARD_SPEED);
-	rightMotor.setSpeed(FORWARD_SPEED);
+	int rotation = convertDistance(RADIUS, distance);
+	if (profile == null) {
+	  profile = MotionProfile.DRIVE;
+	}
+	profile.apply(wheels, rotation, rotation);
 
-	leftMotor.rotate(-convertDistance(RADIUS, distance), true);
-	rightMotor.rotate(-convertDistance(RADIUS, distance), false);
+	startCorrection();
+	if (headingHold) {
+	  holdHeading(-rotation, profile);
+	} else {
+	  wheels.rotate(-rotation, -rotation, false);
+	}
+	stopCorrection();
   }
   
   /**
@@ -120,12 +733,101 @@ public class Navigation {
    * @param distance distance that you want the robot to travel forward
    */
   public void driveForward(double distance) {
+	driveForward(distance, null);
+  }
+  
+  /**
+   * Same as driveForward(), with the given motion profile.
+   * @param distance distance that you want the robot to travel forward
+   * @param profile speed and acceleration limits, or null for the usual ones
+   */
+  public void driveForward(double distance, MotionProfile profile) {
+	run(new MotionCommand(MotionCommand.FORWARD, distance, 0, profile));
+  }
+  
+  /**
+   * Executes driveForward() on the motion thread.
+   * @param distance distance that you want the robot to travel forward
+   * @param profile motion profile, or null for MotionProfile.DRIVE
+   */
+  private void doDriveForward(double distance, MotionProfile profile) {
 	odo.sleepOdometer();
-	leftMotor.setSpeed(FORWARD_SPEED);
-	rightMotor.setSpeed(FORWARD_SPEED);
+	int rotation = convertDistance(RADIUS, distance);
+	if (profile == null) {
+	  profile = MotionProfile.DRIVE;
+	}
+	profile.apply(wheels, rotation, rotation);
 
-	leftMotor.rotate(convertDistance(RADIUS, distance), true);
-	rightMotor.rotate(convertDistance(RADIUS, distance), false);
+	startCorrection();
+	if (headingHold) {
+	  holdHeading(rotation, profile);
+	} else {
+	  wheels.rotate(rotation, rotation, false);
+	}
+	stopCorrection();
+  }
+  
+  /**
+   * Drives straight while the heading controller keeps the heading the robot had at the
+   * start. The wheels run at the cruise speed of the profile, plus or minus the correction,
+   * until the brakes have just enough room to stop on the distance.
+   * @param rotation rotation of the wheels (in degrees, negative to drive backward)
+   * @param profile motion profile, already applied to the motors
+   */
+  private void holdHeading(int rotation, MotionProfile profile) {
+	int direction = rotation >= 0 ? 1 : -1;
+	int target = Math.abs(rotation);
+	if (target == 0) {
+	  return;
+	}
+	int speed = profile.cruiseSpeed(target);
+	double brake = 2.0 * profile.getAcceleration();
+	
+	odo.getXYT(drivePose);
+	double startX = drivePose[0];
+	double startY = drivePose[1];
+	double heading = drivePose[2];
+	double cos = Math.cos(Math.toRadians(heading));
+	double sin = Math.sin(Math.toRadians(heading));
+	int leftStart = leftMotor.getTachoCount();
+	int rightStart = rightMotor.getTachoCount();
+	
+	headingController.reset();
+	if (direction > 0) {
+	  wheels.forward();
+	} else {
+	  wheels.backward();
+	}
+	long last = System.nanoTime();
+	while (true) {
+	  try {
+		Thread.sleep(CONTROL_PERIOD);
+	  } catch (InterruptedException e) {
+		break;
+	  }
+	  int travelled = direction * ((leftMotor.getTachoCount() - leftStart)
+		  + (rightMotor.getTachoCount() - rightStart)) / 2;
+	  double current = (Math.abs(leftMotor.getRotationSpeed())
+		  + Math.abs(rightMotor.getRotationSpeed())) / 2.0;
+	  if (target - travelled <= current * current / brake) {
+		break; // start braking now to stop on the distance
+	  }
+	  if (travelled > 0 && !wheels.isMoving()) {
+		break; // stalled
+	  }
+	  
+	  odo.getXYT(drivePose);
+	  // distance to the right of the line of the drive
+	  headingController.recordCrossTrack((drivePose[0] - startX) * cos
+		  - (drivePose[1] - startY) * sin);
+	  long now = System.nanoTime();
+	  double correction = direction * headingController.update(
+		  HeadingController.headingError(heading, drivePose[2]), (now - last) / 1e9);
+	  last = now;
+	  wheels.setSpeed((float) Math.max(0, speed + correction),
+		  (float) Math.max(0, speed - correction));
+	}
+	wheels.stop();
   }
   
   /**
@@ -134,12 +836,11 @@ public class Navigation {
    * @param distance distance that you want the robot to travel forward
    */
   public void driveForwardWeight(double distance) {
+	waitForMotion();
 	odo.sleepOdometer();
-	leftMotor.setSpeed(FORWARD_SPEED_WEIGHT);
-	rightMotor.setSpeed(FORWARD_SPEED_WEIGHT);
+	wheels.setSpeed(FORWARD_SPEED_WEIGHT);
 
-	leftMotor.rotate(convertDistance(RADIUS, distance), true);
-	rightMotor.rotate(convertDistance(RADIUS, distance), true);
+	wheels.rotate(convertDistance(RADIUS, distance), convertDistance(RADIUS, distance), true);
   }
   
   /**
@@ -149,13 +850,30 @@ public class Navigation {
    * @param theta angle amount (in degrees) that you want the robot to rotate in place
    */
   public void turnToScan(double theta) {
+	waitForMotion();
 	odo.sleepOdometer();
-	leftMotor.setSpeed(SLOW_SPEED);
-    rightMotor.setSpeed(SLOW_SPEED);
-    leftMotor.rotate(convertAngle(RADIUS, TRACK, theta), true);
-    rightMotor.rotate(-convertAngle(RADIUS, TRACK, theta), true);
+	wheels.setSpeed(SLOW_SPEED);
+    wheels.rotate(convertAngle(RADIUS, TRACK, theta), -convertAngle(RADIUS, TRACK, theta), true);
   }
   
+	/**
+	 * Turns the odometry correction on, if there is one, before a straight drive.
+	 */
+	private void startCorrection() {
+	  if (correction != null) {
+	    correction.setEnabled(true);
+	  }
+	}
+	
+	/**
+	 * Turns the odometry correction off, if there is one, after a straight drive.
+	 */
+	private void stopCorrection() {
+	  if (correction != null) {
+	    correction.setEnabled(false);
+	  }
+	}
+	
 	/**
 	 * This method converts a distance into the total rotation (in degrees) of 
 	 * each wheel needed to cover that distance.
@@ -0,0 +1,52 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Rejects the "no echo" readings of the ultrasonic sensor (255 cm, or infinity, when the pulse
+ * did not come back). A rejected reading is replaced by the last accepted one, unless too many
+ * come in a row: then the sensor really sees nothing in range and the reading is let through.
+ * 
+ * @author Carlo D'Angelo
+ */
+public class NoEchoFilter extends SampleFilter {
+
+  /**
+   * Reading (in m, as the sample provider gives it) of the ultrasonic sensor when it gets no
+   * echo.
+   */
+  public static final float NO_ECHO = 2.55f;
+
+  private final int maxRejected;
+  private float last;
+  private boolean empty = true;
+  private int rejected = 0;
+
+  /**
+   * Creates a filter.
+   * 
+   * @param maxRejected number of no echo readings in a row that are rejected
+   */
+  public NoEchoFilter(int maxRejected) {
+    this.maxRejected = maxRejected;
+  }
+
+  public float filter(float sample) {
+    if (!(sample < NO_ECHO)) { // also NaN
+      if (!empty && rejected < maxRejected) {
+        rejected++;
+        return last;
+      }
+      sample = NO_ECHO; // the same whether the sensor gives 2.55 or infinity
+    } else {
+      rejected = 0;
+    }
+    last = sample;
+    empty = false;
+    return sample;
+  }
+
+  public void reset() {
+    empty = true;
+    rejected = 0;
+  }
+
+}
@@ -1,6 +1,7 @@
 package ca.mcgill.ecse211.model;
 
 import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import lejos.robotics.Encoder;
 
 /**
  * This class deals with keeping track of the robot's position (i.e., the odometer) 
@@ -11,22 +12,101 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
  */
 public class Odometer extends OdometerData implements Runnable {
 
-  private OdometerData odoData;
   private static Odometer odo = null; // Returned as singleton
 
   // Motors and related variables
   private int leftMotorTachoCount;
   private int rightMotorTachoCount;
-  private EV3LargeRegulatedMotor leftMotor;
-  private EV3LargeRegulatedMotor rightMotor;
+  private int lastLeftMotorTachoCount; // absolute counts at the previous update
+  private int lastRightMotorTachoCount;
+  private Encoder leftMotor;
+  private Encoder rightMotor;
 
-  //Variables that help with the implementation of the odometer
-  private double distL, distR, deltaD, deltaT, dX, dY; 
-  
+  private final OdometryBackend backend;
+
+  /**
+   * Number of poses kept in the history (about 5 seconds at the default update rate).
+   */
+  private static final int HISTORY_CAPACITY = 512;
+
+  private final PoseHistory history = new PoseHistory(HISTORY_CAPACITY);
+  private final double[] position = new double[3]; // pose recorded in the history
+
+  private final double DISTANCE_PER_DEGREE; // wheel displacement (cm) per tacho degree
   private final double TRACK;
-  private final double WHEEL_RAD;
 
-  private static final long ODOMETER_PERIOD = 25; // odometer update period in ms
+  // Total wheel rotation (degrees) since the odometer started, written by the odometer thread only
+  private volatile long wheelTravel; // sum of |left + right|
+  private volatile long wheelTurn; // sum of |left - right|
+
+  /**
+   * Triggers evaluated after every update. The array is replaced, never modified, so that the
+   * odometer thread can go through it without locking.
+   */
+  private volatile PoseTrigger[] triggers = new PoseTrigger[0];
+  private final Object triggerLock = new Object(); // serializes changes to the triggers array
+
+  /**
+   * Maximum number of corrections kept in the correction log.
+   */
+  private static final int CORRECTION_LOG_CAPACITY = 256;
+
+  private final CorrectionLog correctionLog = new CorrectionLog(CORRECTION_LOG_CAPACITY);
+  private final double[] beforeCorrection = new double[3];
+  private double distanceAtCorrection, rotationAtCorrection; // travel at the last correction
+
+  /**
+   * How the displacement of one update is turned into a change of position.
+   */
+  public enum Integration {
+    /**
+     * Moves the whole displacement along the heading at the end of the update.
+     */
+    EULER,
+    /**
+     * Moves the whole displacement along the heading in the middle of the update.
+     */
+    MIDPOINT,
+    /**
+     * Moves along the circular arc actually followed by the robot during the update (exact for
+     * constant wheel speeds).
+     */
+    ARC
+  }
+
+  /**
+   * Arithmetic used to compute the odometry.
+   */
+  public enum Backend {
+    /**
+     * Double precision, see {@link FloatingPointOdometry}.
+     */
+    FLOATING_POINT,
+    /**
+     * Integer arithmetic, see {@link FixedPointOdometry}.
+     */
+    FIXED_POINT
+  }
+
+  /**
+   * Default rate (in Hz) at which the odometer updates the robot's position.
+   */
+  public static final int DEFAULT_UPDATE_FREQUENCY = 100;
+
+  /**
+   * Lowest and highest update rates (in Hz) accepted by setUpdateFrequency().
+   */
+  public static final int MIN_UPDATE_FREQUENCY = 40;
+  public static final int MAX_UPDATE_FREQUENCY = 500;
+
+  private volatile long updatePeriod = 1000000000L / DEFAULT_UPDATE_FREQUENCY; // in ns
+
+  // Timing statistics, written by the odometer thread only
+  private volatile long updateCount;
+  private volatile long totalPeriod; // sum of the measured periods (ns)
+  private volatile long maxJitter; // largest deviation from the update period (ns)
+  private volatile long totalJitter; // sum of the deviations from the update period (ns)
+  private volatile long overrunCount; // number of deadlines missed
   
   /**
    * Before any of the navigation methods are called, the odometer thread will sleep
@@ -36,33 +116,40 @@ public class Odometer extends OdometerData implements Runnable {
   private static final long ODOMETER_SLEEP_AMOUNT = 5; 
 
   /**
-   * This is the default constructor of this class. It initiates all motors and variables once.It
-   * cannot be accessed externally.
+   * This is the default constructor of this class. It initiates all motors and variables once. The
+   * robot's code uses the single odometer returned by getOdometer(); other instances are independent
+   * of it and of each other, so that several simulated robots (e.g., fed recorded or simulated tacho
+   * counts through {@link #step(long)}) can run in the same program.
    * 
-   * @param leftMotor
-   * @param rightMotor
-   * @throws OdometerExceptions
+   * @param leftMotor tacho counter of the left wheel
+   * @param rightMotor tacho counter of the right wheel
+   * @param TRACK distance between the centers of the wheels (cm)
+   * @param WHEEL_RAD radius of the wheels (cm)
+   * @param backend arithmetic used for the odometry
    */
-  private Odometer(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor,
-      final double TRACK, final double WHEEL_RAD) throws OdometerExceptions {
-    odoData = OdometerData.getOdometerData(); // Allows access to x,y,z
-                                              // manipulation methods
+  public Odometer(Encoder leftMotor, Encoder rightMotor, final double TRACK,
+      final double WHEEL_RAD, Backend backend) {
     this.leftMotor = leftMotor;
     this.rightMotor = rightMotor;
 
-    // Reset the values of x, y and z to 0
-    odoData.setXYT(0, 0, 0);
-
-    this.leftMotorTachoCount = 0;
-    this.rightMotorTachoCount = 0;
+    this.leftMotorTachoCount = leftMotor.getTachoCount();
+    this.rightMotorTachoCount = rightMotor.getTachoCount();
+    this.lastLeftMotorTachoCount = leftMotorTachoCount;
+    this.lastRightMotorTachoCount = rightMotorTachoCount;
 
+    this.DISTANCE_PER_DEGREE = Math.PI * WHEEL_RAD / 180.0;
     this.TRACK = TRACK;
-    this.WHEEL_RAD = WHEEL_RAD;
+    if (backend == Backend.FIXED_POINT) {
+      this.backend = new FixedPointOdometry(this, WHEEL_RAD, TRACK);
+    } else {
+      this.backend = new FloatingPointOdometry(this, WHEEL_RAD, TRACK);
+    }
 
   }
 
   /**
    * This method is meant to ensure only one instance of the odometer is used throughout the code.
+   * The odometry is computed in double precision.
    * 
    * @param leftMotor
    * @param rightMotor
@@ -72,10 +159,27 @@ public class Odometer extends OdometerData implements Runnable {
   public synchronized static Odometer getOdometer(EV3LargeRegulatedMotor leftMotor,
       EV3LargeRegulatedMotor rightMotor, final double TRACK, final double WHEEL_RAD)
       throws OdometerExceptions {
+    return getOdometer(leftMotor, rightMotor, TRACK, WHEEL_RAD, Backend.FLOATING_POINT);
+  }
+
+  /**
+   * Same as {@link #getOdometer(EV3LargeRegulatedMotor, EV3LargeRegulatedMotor, double, double)},
+   * but selects the arithmetic used for the odometry. The backend is only used if the odometer
+   * does not exist yet.
+   * 
+   * @param leftMotor
+   * @param rightMotor
+   * @param backend arithmetic used for the odometry
+   * @return new or existing Odometer Object
+   * @throws OdometerExceptions
+   */
+  public synchronized static Odometer getOdometer(EV3LargeRegulatedMotor leftMotor,
+      EV3LargeRegulatedMotor rightMotor, final double TRACK, final double WHEEL_RAD,
+      Backend backend) throws OdometerExceptions {
     if (odo != null) { // Return existing object
       return odo;
     } else { // create object and return it
-      odo = new Odometer(leftMotor, rightMotor, TRACK, WHEEL_RAD);
+      odo = new Odometer(leftMotor, rightMotor, TRACK, WHEEL_RAD, backend);
       return odo;
     }
   }
@@ -96,42 +200,351 @@ public class Odometer extends OdometerData implements Runnable {
   }
 
   /**
-   * This method is where the logic for the odometer will run.
+   * This method is where the logic for the odometer will run. Updates are scheduled on fixed
+   * deadlines (System.nanoTime()) one update period apart, so the rate does not drift with the time
+   * spent in each update. If a deadline is missed, it is counted as an overrun and the loop moves on
+   * to the next deadline still in the future: no tacho ticks are lost doing so, since each update
+   * integrates the change in the absolute tacho counts since the previous one.
    */
   // run method (required for Thread)
   public void run() {
-    long updateStart, updateEnd;
+    long deadline, now, lastUpdate, period, jitter, remaining;
+
+    lastLeftMotorTachoCount = leftMotor.getTachoCount();
+    lastRightMotorTachoCount = rightMotor.getTachoCount();
+    deadline = System.nanoTime();
+    lastUpdate = 0;
 
     while (true) {
-      updateStart = System.currentTimeMillis();
-
-      leftMotorTachoCount = leftMotor.getTachoCount();
-      rightMotorTachoCount = rightMotor.getTachoCount();
-      
-      distL = (Math.PI * WHEEL_RAD * (leftMotorTachoCount) / 180.0);     // compute wheel   
-      distR = (Math.PI * WHEEL_RAD * (rightMotorTachoCount) / 180.0);   // displacements   
-      deltaD = 0.5 * (distL + distR);      // compute vehicle displacement   
-      deltaT = ((distL - distR) / TRACK);   // compute change in heading          
-      dX = deltaD * Math.sin((Math.toRadians(this.getXYT()[2]) + deltaT));    // compute X component of displacement   
-      dY = deltaD * Math.cos((Math.toRadians(this.getXYT()[2]) + deltaT));  // compute Y component of displacement
-      deltaT = Math.toDegrees(deltaT);
- 
-      odo.update(dX, dY, deltaT);
-      
-      leftMotor.resetTachoCount();
-      rightMotor.resetTachoCount();
+      now = System.nanoTime();
+      if (lastUpdate != 0) {
+        period = now - lastUpdate;
+        jitter = Math.abs(period - updatePeriod);
+        totalPeriod += period;
+        totalJitter += jitter;
+        if (jitter > maxJitter) {
+          maxJitter = jitter;
+        }
+        updateCount++;
+      }
+      lastUpdate = now;
+
+      step(now);
 
       // this ensures that the odometer only runs once every period
-      updateEnd = System.currentTimeMillis();
-      if (updateEnd - updateStart < ODOMETER_PERIOD) {
+      deadline += updatePeriod;
+      remaining = deadline - System.nanoTime();
+      if (remaining > 0) {
         try {
-          Thread.sleep(ODOMETER_PERIOD - (updateEnd - updateStart));
+          Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
         } catch (InterruptedException e) {
           // there is nothing to be done
         }
+      } else {
+        overrunCount++;
+        deadline += (-remaining / updatePeriod) * updatePeriod; // skip the deadlines already missed
+      }
+    }
+  }
+
+  /**
+   * Performs one update of the odometer: integrates the wheel rotations since the previous update,
+   * records the new pose in the history and evaluates the triggers. run() calls it once per update
+   * period; a simulation can call it directly instead of running the odometer thread.
+   * 
+   * @param time System.nanoTime() (or simulated time, in ns) at which the tacho counts are read
+   */
+  public void step(long time) {
+    updatePosition();
+    getXYTRadians(position);
+    history.record(time, position[0], position[1], position[2]);
+    if (triggers.length > 0) {
+      checkTriggers();
+    }
+  }
+
+  /**
+   * Reads the tacho counts and has the backend add the displacement of the robot since the previous
+   * update to the odometer data.
+   */
+  private void updatePosition() {
+    leftMotorTachoCount = leftMotor.getTachoCount();
+    rightMotorTachoCount = rightMotor.getTachoCount();
+    if (leftMotorTachoCount == lastLeftMotorTachoCount
+        && rightMotorTachoCount == lastRightMotorTachoCount) {
+      return; // robot did not move
+    }
+
+    int leftDelta = leftMotorTachoCount - lastLeftMotorTachoCount;
+    int rightDelta = rightMotorTachoCount - lastRightMotorTachoCount;
+    backend.integrate(leftDelta, rightDelta);
+    wheelTravel += Math.abs(leftDelta + rightDelta);
+    wheelTurn += Math.abs(leftDelta - rightDelta);
+    lastLeftMotorTachoCount = leftMotorTachoCount;
+    lastRightMotorTachoCount = rightMotorTachoCount;
+  }
+
+  /**
+   * Evaluates the registered triggers against the pose just recorded, and fires those whose
+   * condition is met.
+   */
+  private void checkTriggers() {
+    PoseTrigger[] current = triggers;
+    double theta = Math.toDegrees(position[2]);
+    double distance = getDistanceTravelled();
+    for (int i = 0; i < current.length; i++) {
+      if (current[i].test(position[0], position[1], theta, distance)) {
+        remove(current[i]);
+        current[i].fire();
+      }
+    }
+  }
+
+  /**
+   * Registers a trigger, to be evaluated after every update until it fires.
+   * 
+   * @param trigger the trigger
+   * @return the trigger, so that the caller can await() it
+   */
+  public PoseTrigger addTrigger(PoseTrigger trigger) {
+    synchronized (triggerLock) {
+      PoseTrigger[] updated = new PoseTrigger[triggers.length + 1];
+      System.arraycopy(triggers, 0, updated, 0, triggers.length);
+      updated[triggers.length] = trigger;
+      triggers = updated;
+    }
+    return trigger;
+  }
+
+  /**
+   * Unregisters a trigger that has not fired. Threads waiting for it are woken up.
+   * 
+   * @param trigger the trigger
+   */
+  public void removeTrigger(PoseTrigger trigger) {
+    if (remove(trigger)) {
+      trigger.cancel();
+    }
+  }
+
+  /**
+   * Removes a trigger from the array of registered triggers.
+   * 
+   * @param trigger the trigger
+   * @return false if the trigger was not registered
+   */
+  private boolean remove(PoseTrigger trigger) {
+    synchronized (triggerLock) {
+      PoseTrigger[] current = triggers;
+      for (int i = 0; i < current.length; i++) {
+        if (current[i] == trigger) {
+          PoseTrigger[] updated = new PoseTrigger[current.length - 1];
+          System.arraycopy(current, 0, updated, 0, i);
+          System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+          triggers = updated;
+          return true;
+        }
       }
+      return false;
     }
   }
+
+  /**
+   * @return total distance (cm) travelled by the robot, forward or backward, since the odometer
+   *         started
+   */
+  public double getDistanceTravelled() {
+    return wheelTravel * DISTANCE_PER_DEGREE / 2;
+  }
+
+  /**
+   * @return total rotation (degrees) of the robot, in either direction, since the odometer started
+   */
+  public double getRotationTravelled() {
+    return Math.toDegrees(wheelTurn * DISTANCE_PER_DEGREE / TRACK);
+  }
+
+  /**
+   * Overrides the values of x, y and theta like setXYT(), and records the correction in the
+   * correction log. Use when the pose is corrected from a localization.
+   * 
+   * @param x the value of x
+   * @param y the value of y
+   * @param theta the value of theta
+   * @param source what made the correction (e.g., CorrectionLog.LIGHT_LOCALIZATION)
+   */
+  public synchronized void correctXYT(double x, double y, double theta, int source) {
+    getXYT(beforeCorrection);
+    setXYT(x, y, theta);
+    logCorrection(source, x, y, theta);
+  }
+
+  /**
+   * Overrides theta like setTheta(), and records the correction in the correction log.
+   * 
+   * @param theta the value of theta
+   * @param source what made the correction (e.g., CorrectionLog.ULTRASONIC_LOCALIZATION)
+   */
+  public synchronized void correctTheta(double theta, int source) {
+    getXYT(beforeCorrection);
+    setTheta(theta);
+    logCorrection(source, beforeCorrection[0], beforeCorrection[1], theta);
+  }
+
+  /**
+   * Shifts x and y by the given amounts and records the correction in the correction log. Unlike
+   * setXYT(), the shift is applied atomically with respect to the odometer's updates, so it can be
+   * used while the robot is moving.
+   * 
+   * @param dx change of x (cm)
+   * @param dy change of y (cm)
+   * @param source what made the correction (e.g., CorrectionLog.GRID_LINE)
+   */
+  public synchronized void correctOffset(double dx, double dy, int source) {
+    getXYT(beforeCorrection);
+    update(dx, dy, 0);
+    logCorrection(source, beforeCorrection[0] + dx, beforeCorrection[1] + dy,
+        beforeCorrection[2]);
+  }
+
+  /**
+   * Records a correction along with the distance and rotation since the previous one.
+   */
+  private void logCorrection(int source, double x, double y, double theta) {
+    double distance = getDistanceTravelled();
+    double rotation = getRotationTravelled();
+    correctionLog.record(source, beforeCorrection, x, y, theta, distance - distanceAtCorrection,
+        rotation - rotationAtCorrection);
+    distanceAtCorrection = distance;
+    rotationAtCorrection = rotation;
+  }
+
+  /**
+   * @return the log of the corrections made with correctXYT() and correctTheta()
+   */
+  public CorrectionLog getCorrectionLog() {
+    return correctionLog;
+  }
+
+  /**
+   * Selects how the displacement of each update is integrated by the floating point backend. ARC
+   * is used by default. The fixed point backend always integrates at the mid-update heading.
+   * 
+   * @param integration integration mode
+   */
+  public void setIntegration(Integration integration) {
+    if (backend instanceof FloatingPointOdometry) {
+      ((FloatingPointOdometry) backend).setIntegration(integration);
+    }
+  }
+
+  /**
+   * @return the integration mode in use
+   */
+  public Integration getIntegration() {
+    if (backend instanceof FloatingPointOdometry) {
+      return ((FloatingPointOdometry) backend).getIntegration();
+    }
+    return Integration.MIDPOINT;
+  }
+
+  /**
+   * @return the backend computing the odometry
+   */
+  public OdometryBackend getBackend() {
+    return backend;
+  }
+
+  /**
+   * Returns the pose the robot had at a given instant, interpolated from the poses recorded at each
+   * update. Use it to match a sensor reading with the pose at the time the reading was taken. Note
+   * that poses recorded before a correction (setXYT() and the like) are not corrected.
+   * 
+   * @param time System.nanoTime() of interest
+   * @param position the array to store x, y and theta (degrees), as returned by getXYT()
+   * @return false if the odometer's history does not go back that far
+   */
+  public boolean poseAt(long time, double[] position) {
+    return history.poseAt(time, position);
+  }
+
+  /**
+   * @return the history of poses recorded by the odometer
+   */
+  public PoseHistory getPoseHistory() {
+    return history;
+  }
+
+  /**
+   * Sets the rate at which the odometer updates the robot's position. Takes effect at the next
+   * update.
+   * 
+   * @param frequency update rate in Hz, between MIN_UPDATE_FREQUENCY and MAX_UPDATE_FREQUENCY
+   */
+  public void setUpdateFrequency(int frequency) {
+    if (frequency < MIN_UPDATE_FREQUENCY || frequency > MAX_UPDATE_FREQUENCY) {
+      throw new IllegalArgumentException("Odometer frequency must be between "
+          + MIN_UPDATE_FREQUENCY + " and " + MAX_UPDATE_FREQUENCY + " Hz.");
+    }
+    updatePeriod = 1000000000L / frequency;
+  }
+
+  /**
+   * @return the update period (in ns) the odometer is scheduled at
+   */
+  public long getUpdatePeriod() {
+    return updatePeriod;
+  }
+
+  /**
+   * @return the average time (in ns) actually measured between two updates, 0 if not yet known
+   */
+  public long getMeasuredPeriod() {
+    long count = updateCount;
+    return count == 0 ? 0 : totalPeriod / count;
+  }
+
+  /**
+   * @return the average deviation (in ns) of the measured periods from the update period
+   */
+  public long getAverageJitter() {
+    long count = updateCount;
+    return count == 0 ? 0 : totalJitter / count;
+  }
+
+  /**
+   * @return the largest deviation (in ns) of a measured period from the update period
+   */
+  public long getMaxJitter() {
+    return maxJitter;
+  }
+
+  /**
+   * @return the number of update deadlines that were missed
+   */
+  public long getOverrunCount() {
+    return overrunCount;
+  }
+
+  /**
+   * @return the number of periods measured since the odometer started or since the statistics were
+   *         reset
+   */
+  public long getUpdateCount() {
+    return updateCount;
+  }
+
+  /**
+   * Clears the timing statistics, for instance before a phase of the mission that is to be
+   * measured on its own. Meant to be called when the statistics are not being read.
+   */
+  public void resetTimingStatistics() {
+    updateCount = 0;
+    totalPeriod = 0;
+    totalJitter = 0;
+    maxJitter = 0;
+    overrunCount = 0;
+  }
   
   public void sleepOdometer() {
 	  try {
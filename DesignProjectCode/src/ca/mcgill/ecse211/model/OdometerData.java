@@ -1,6 +1,5 @@
 package ca.mcgill.ecse211.model;
 
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -19,7 +18,7 @@ public class OdometerData {
   // Position parameters
   private volatile double x; // x-axis position
   private volatile double y; // y-axis position
-  private volatile double theta; // Head angle
+  private volatile double theta; // Head angle, kept in radians between 0 and 2*pi
 
   // Class control variables
   private volatile static int numberOfIntances = 0; // Number of OdometerData
@@ -29,23 +28,25 @@ public class OdometerData {
                                               // OdometerData instances
 
   // Thread control tools
-  private static Lock lock = new ReentrantLock(true); // Fair lock for
-                                                      // concurrent writing
-  private volatile boolean isReseting = false; // Indicates if a thread is
-                                               // trying to reset any
-                                               // position parameters
-  private Condition doneReseting = lock.newCondition(); // Let other threads
-                                                        // know that a reset
-                                                        // operation is
-                                                        // over.
+  private final Lock lock = new ReentrantLock(true); // Fair lock for
+                                                     // concurrent writing
+  /**
+   * Sequence counter of the pose (seqlock). Writers make it odd before touching x, y and theta and
+   * even again once they are done, so readers never need to take the lock: they simply retry if the
+   * counter was odd or changed while they were copying the pose.
+   */
+  private volatile int sequence = 0;
+
+  private volatile Pose lastPose = null; // Last snapshot handed out by getPose()
 
   private static OdometerData odoData = null;
 
   /**
-   * Default constructor. The constructor is private. A factory is used instead such that only one
-   * instance of this class is ever created.
+   * Default constructor. The robot's code uses the single instance returned by the
+   * getOdometerData() factory; other instances are independent of it and of each other, e.g., for
+   * several simulated robots in the same program.
    */
-  protected OdometerData() {
+  public OdometerData() {
     this.x = 0;
     this.y = 0;
     this.theta = 0;
@@ -83,28 +84,93 @@ public class OdometerData {
    * @return the odometer data.
    */
   public double[] getXYT() {
-    double[] position = new double[3];
-    lock.lock();
-    try {
-      while (isReseting) { // If a reset operation is being executed, wait
-        // until it is over.
-        doneReseting.await(); // Using await() is lighter on the CPU
-        // than simple busy wait.
-      }
+    return getXYT(new double[3]);
+  }
 
+  /**
+   * Same as {@link #getXYT()}, but writes the pose into an array supplied by the caller so that
+   * frequent reads do not allocate. position[0] = x, position[1] = y; position[2] = theta;
+   * 
+   * @param position the array (of length 3 or more) to store the odometer data
+   * @return the position array
+   */
+  public double[] getXYT(double[] position) {
+    int start;
+    do {
+      start = readBegin();
       position[0] = x;
       position[1] = y;
-      position[2] = theta;
+      position[2] = toDegrees(theta);
+    } while (readRetry(start));
 
-    } catch (InterruptedException e) {
-      // Print exception to screen
-      e.printStackTrace();
-    } finally {
-      lock.unlock();
+    return position;
+
+  }
+
+  /**
+   * Returns an immutable snapshot of the pose. The previous snapshot is returned again if the pose
+   * has not been written since it was taken.
+   * 
+   * @return the current pose
+   */
+  public Pose getPose() {
+    Pose pose = lastPose;
+    int start = readBegin();
+    if (pose != null && pose.sequence == start) {
+      return pose;
     }
+    double px, py, pt;
+    do {
+      start = readBegin();
+      px = x;
+      py = y;
+      pt = toDegrees(theta);
+    } while (readRetry(start));
 
-    return position;
+    pose = new Pose(px, py, pt, start);
+    lastPose = pose;
+    return pose;
+  }
 
+  /**
+   * Waits until no write is in progress and returns the sequence number at which a lock-free read
+   * of the pose may start.
+   * 
+   * @return the (even) sequence number observed
+   */
+  private int readBegin() {
+    int start;
+    while (((start = sequence) & 1) != 0) {
+      Thread.yield(); // A writer holds the pose, let it finish
+    }
+    return start;
+  }
+
+  /**
+   * Tells whether a lock-free read started with {@link #readBegin()} overlapped a write and must be
+   * repeated.
+   * 
+   * @param start the sequence number returned by readBegin()
+   * @return true if the values read may be inconsistent
+   */
+  private boolean readRetry(int start) {
+    return sequence != start;
+  }
+
+  /**
+   * Starts a write of the pose. Writers are serialized by the lock, readers are not blocked.
+   */
+  private void writeBegin() {
+    lock.lock();
+    sequence++; // odd: write in progress
+  }
+
+  /**
+   * Ends a write of the pose started by writeBegin().
+   */
+  private void writeEnd() {
+    sequence++; // even: pose is consistent again
+    lock.unlock();
   }
 
   /**
@@ -116,21 +182,131 @@ public class OdometerData {
    * @param dtheta
    */
   public void update(double dx, double dy, double dtheta) {
-    lock.lock();
-    isReseting = true;
+    if (dx == 0 && dy == 0 && dtheta == 0) {
+      return; // Robot did not move, keep the current snapshot valid
+    }
+    writeBegin();
+    try {
+      x += dx;
+      y += dy;
+      theta = normalize(theta + Math.toRadians(dtheta)); // keeps the updates
+                                                          // within 360
+                                                          // degrees
+    } finally {
+      writeEnd();
+    }
+
+  }
+
+  /**
+   * Same as {@link #update(double, double, double)}, but with the change in heading in radians. This
+   * is what the odometer uses, so that the heading is only converted to degrees when it is read.
+   * 
+   * @param dx
+   * @param dy
+   * @param dthetaRad change in heading (radians)
+   */
+  protected void updateRadians(double dx, double dy, double dthetaRad) {
+    if (dx == 0 && dy == 0 && dthetaRad == 0) {
+      return; // Robot did not move, keep the current snapshot valid
+    }
+    writeBegin();
     try {
       x += dx;
       y += dy;
-      theta = (theta + (360 + dtheta) % 360) % 360; // keeps the updates
-                                                    // within 360
-                                                    // degrees
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
+      theta = normalize(theta + dthetaRad);
+    } finally {
+      writeEnd();
+    }
+  }
+
+  /**
+   * Returns the heading without converting it to degrees. A single volatile read, so it does not
+   * need the sequence counter.
+   * 
+   * @return heading (radians, between 0 and 2*pi)
+   */
+  protected double getThetaRadians() {
+    return theta;
+  }
+
+  /**
+   * Waits for any write in progress to finish and returns the sequence number of the pose. The
+   * number changes every time the pose is written.
+   * 
+   * @return the sequence number of the pose
+   */
+  protected int getSequence() {
+    return readBegin();
+  }
+
+  /**
+   * Reads the pose with the heading in radians.
+   * 
+   * @param position the array to store x, y and theta (radians)
+   * @return the sequence number of the pose that was read
+   */
+  protected int getXYTRadians(double[] position) {
+    int start;
+    do {
+      start = readBegin();
+      position[0] = x;
+      position[1] = y;
+      position[2] = theta;
+    } while (readRetry(start));
+    return start;
+  }
+
+  /**
+   * Overrides the pose, but only if nothing else wrote it since the given sequence number. The
+   * sequence number is increased by 2 when the write succeeds.
+   * 
+   * @param expectedSequence sequence number the pose must still have
+   * @param x the value of x
+   * @param y the value of y
+   * @param thetaRad the value of theta (radians)
+   * @return true if the pose was written
+   */
+  protected boolean setXYTRadians(int expectedSequence, double x, double y, double thetaRad) {
+    lock.lock();
+    try {
+      if (sequence != expectedSequence) {
+        return false;
+      }
+      sequence++;
+      this.x = x;
+      this.y = y;
+      this.theta = normalize(thetaRad);
+      sequence++;
+      return true;
     } finally {
       lock.unlock();
     }
+  }
+
+  /**
+   * Converts the internal heading to the degrees used by the rest of the code.
+   * 
+   * @param angle angle (radians) between 0 and 2*pi
+   * @return angle (degrees) between 0 and 360
+   */
+  private static double toDegrees(double angle) {
+    double degrees = Math.toDegrees(angle);
+    return degrees < 360 ? degrees : degrees - 360; // rounding just below 2*pi
+  }
 
+  /**
+   * Brings an angle back between 0 and 2*pi.
+   * 
+   * @param angle angle (radians)
+   * @return the equivalent angle between 0 and 2*pi
+   */
+  private static double normalize(double angle) {
+    if (angle >= 0 && angle < 2 * Math.PI) {
+      return angle; // Usual case during odometry: nothing to do
+    }
+    angle %= 2 * Math.PI;
+    return angle < 0 ? angle + 2 * Math.PI : angle;
   }
 
   /**
@@ -141,17 +317,13 @@ public class OdometerData {
    * @param theta the value of theta
    */
   public void setXYT(double x, double y, double theta) {
-    lock.lock();
-    isReseting = true;
+    writeBegin();
     try {
       this.x = x;
       this.y = y;
-      this.theta = theta;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
+      this.theta = normalize(Math.toRadians(theta));
     } finally {
-      lock.unlock();
+      writeEnd();
     }
   }
 
@@ -161,15 +333,11 @@ public class OdometerData {
    * @param x the value of x
    */
   public void setX(double x) {
-    lock.lock();
-    isReseting = true;
+    writeBegin();
     try {
       this.x = x;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
     } finally {
-      lock.unlock();
+      writeEnd();
     }
   }
 
@@ -179,15 +347,11 @@ public class OdometerData {
    * @param y the value of y
    */
   public void setY(double y) {
-    lock.lock();
-    isReseting = true;
+    writeBegin();
     try {
       this.y = y;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
     } finally {
-      lock.unlock();
+      writeEnd();
     }
   }
 
@@ -197,15 +361,11 @@ public class OdometerData {
    * @param theta the value of theta
    */
   public void setTheta(double theta) {
-    lock.lock();
-    isReseting = true;
+    writeBegin();
     try {
-      this.theta = theta;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
+      this.theta = normalize(Math.toRadians(theta));
     } finally {
-      lock.unlock();
+      writeEnd();
     }
   }
 
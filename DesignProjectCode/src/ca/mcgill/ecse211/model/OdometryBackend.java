@@ -0,0 +1,35 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * This class turns the wheel rotations measured by the odometer into a new position of the robot.
+ * The odometer thread reads the tacho counts and hands the change since its previous update to the
+ * backend, which writes the result into the odometer data. Backends do not touch the motors, so
+ * they can also be fed recorded or simulated tacho counts.
+ * 
+ * @author Carlo D'Angelo
+ */
+public abstract class OdometryBackend {
+
+  /**
+   * Odometer data the position is written to.
+   */
+  protected final OdometerData odoData;
+
+  /**
+   * Creates a backend writing to the given odometer data.
+   * 
+   * @param odoData odometer data to update
+   */
+  protected OdometryBackend(OdometerData odoData) {
+    this.odoData = odoData;
+  }
+
+  /**
+   * Adds the displacement caused by the given wheel rotations to the odometer data.
+   * 
+   * @param leftDelta change of the left motor's tacho count (degrees) since the previous call
+   * @param rightDelta change of the right motor's tacho count (degrees) since the previous call
+   */
+  public abstract void integrate(int leftDelta, int rightDelta);
+
+}
@@ -0,0 +1,206 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * This class corrects the odometer while the robot drives straight, using the light sensor that
+ * faces the ground. Every time the sensor crosses a grid line, the coordinate across that line
+ * (y for a horizontal line, x for a vertical one) is snapped so that the sensor lies exactly on the
+ * line. The thread only goes through the samples of the light sensor while Navigation is driving
+ * straight; it sleeps the rest of the time.
+ * <p>
+ * The crossing is taken at the middle of the line: halfway between the first and the last readings
+ * that are COLOUR_DIFF off the floor. Snapping at the first one would put the odometer half a line
+ * width (plus the sampling lag) ahead, and the other way when driving backward.
+ * <p>
+ * A line is only trusted when the robot is heading along an axis, the sensor is close to where the
+ * odometer expects a line, and the sensor is not running along a parallel line (in which case the
+ * grid line under it would hide the crossing).
+ * 
+ * @author Carlo D'Angelo
+ */
+public class OdometryCorrection implements Runnable {
+
+  /**
+   * Period (ms) between two checks for new light sensor samples while correcting. Every sample is
+   * processed, whatever the period.
+   */
+  private static final int SAMPLE_PERIOD = 5;
+
+  /**
+   * Percent change in brightness, relative to the floor, that counts as a grid line (same as the
+   * light localization).
+   */
+  private static final int COLOUR_DIFF = 20;
+
+  /**
+   * Brightness change (percent) below which the sensor is considered back on the floor.
+   */
+  private static final int COLOUR_DIFF_RELEASE = 10;
+
+  /**
+   * Largest difference (degrees) between the heading and an axis for a line to be used.
+   */
+  private static final double HEADING_TOLERANCE = 10.0;
+
+  /**
+   * Largest correction (cm) applied. A line further than this from where the odometer expects one
+   * is ignored.
+   */
+  private static final double SNAP_WINDOW = 5.0;
+
+  /**
+   * Smallest distance (cm) between the sensor and the grid lines parallel to the direction of
+   * travel for a crossing to be detected reliably.
+   */
+  private static final double LINE_CLEARANCE = 3.0;
+
+  /**
+   * Weight of each new reading in the floor brightness average.
+   */
+  private static final float BASELINE_WEIGHT = 0.1f;
+
+  private final double TILE_SIZE = Navigation.TILE_SIZE;
+  private final double SENSOR_OFFSET = LightLocalizer.LIGHT_LOC_DISTANCE; // sensor behind the wheels
+
+  private Odometer odo;
+  private SensorSampler lightSampler;
+  private float[] csData;
+  private final double[] position = new double[3];
+
+  private volatile boolean enabled = false;
+  private volatile int correctionCount = 0;
+
+  /**
+   * This is the default constructor of this class.
+   * 
+   * @param odo odometer to correct
+   * @param lightSampler sampler of the light sensor
+   */
+  public OdometryCorrection(Odometer odo, SensorSampler lightSampler) {
+    this.odo = odo;
+    this.lightSampler = lightSampler;
+    this.csData = new float[lightSampler.sampleSize()];
+  }
+
+  /**
+   * Turns the correction on (when the robot starts driving straight) or off.
+   * 
+   * @param enabled true to sample the light sensor and correct the odometer
+   */
+  public synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    notifyAll();
+  }
+
+  /**
+   * @return number of corrections applied so far
+   */
+  public int getCorrectionCount() {
+    return correctionCount;
+  }
+
+  /**
+   * Method where the correction runs. Waits while disabled; while enabled, goes through the new
+   * samples of the light sensor, keeps a running average of the floor brightness and looks for the
+   * lines, each reported once the sensor is back on the floor.
+   */
+  public void run() {
+    float baseline = 0;
+    boolean onLine = false;
+    long enterTime = 0; // first and last readings off the floor by COLOUR_DIFF
+    long lastTime = 0;
+    boolean wasEnabled = false;
+    long next = 0; // next sample to process
+
+    while (true) {
+      if (!enabled) {
+        synchronized (this) {
+          while (!enabled) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              // there is nothing to be done
+            }
+          }
+        }
+        wasEnabled = false;
+      }
+      if (!wasEnabled) {
+        next = Math.max(0, lightSampler.getCount() - 1); // start from the newest sample
+      }
+
+      for (long end = lightSampler.getCount(); next < end; next++) {
+        long sampleTime = lightSampler.getSample(next, csData);
+        if (sampleTime == 0) {
+          continue; // overwritten before it could be processed
+        }
+        float sample = csData[0] * 1000;
+
+        if (!wasEnabled) { // new drive: the sensor is assumed to start on the floor
+          baseline = sample;
+          onLine = false;
+          wasEnabled = true;
+        } else {
+          float change = 100 * Math.abs(sample - baseline) / baseline;
+          if (change > COLOUR_DIFF) {
+            if (!onLine) {
+              onLine = true;
+              enterTime = sampleTime;
+            }
+            lastTime = sampleTime;
+          } else if (onLine && change < COLOUR_DIFF_RELEASE) {
+            onLine = false;
+            lineCrossed(enterTime + (lastTime - enterTime) / 2);
+          }
+          if (!onLine) {
+            baseline += BASELINE_WEIGHT * (sample - baseline);
+          }
+        }
+      }
+
+      try {
+        Thread.sleep(SAMPLE_PERIOD);
+      } catch (InterruptedException e) {
+        // there is nothing to be done
+      }
+    }
+  }
+
+  /**
+   * Handles a line crossed at the given time: finds which line it must be and corrects the
+   * odometer if the detection is trustworthy.
+   * 
+   * @param sampleTime System.nanoTime() at which the sensor was over the middle of the line
+   */
+  private void lineCrossed(long sampleTime) {
+    if (!odo.poseAt(sampleTime, position)) {
+      odo.getXYT(position);
+    }
+    double theta = position[2];
+    double sensorX = position[0] - SENSOR_OFFSET * Math.sin(Math.toRadians(theta));
+    double sensorY = position[1] - SENSOR_OFFSET * Math.cos(Math.toRadians(theta));
+
+    double axis = Math.round(theta / 90) * 90; // closest of 0, 90, 180, 270 (or 360)
+    if (Math.abs(theta - axis) > HEADING_TOLERANCE) {
+      return; // crossing lines at an angle: cannot tell which coordinate is off
+    }
+    boolean alongY = axis == 0 || axis == 180 || axis == 360;
+    double across = alongY ? sensorY : sensorX; // coordinate measured by the crossing
+    double along = alongY ? sensorX : sensorY; // coordinate of the parallel lines
+
+    if (Math.abs(along - Math.round(along / TILE_SIZE) * TILE_SIZE) < LINE_CLEARANCE) {
+      return; // sensor runs along a line
+    }
+    double error = Math.round(across / TILE_SIZE) * TILE_SIZE - across;
+    if (Math.abs(error) > SNAP_WINDOW) {
+      return; // no line expected here
+    }
+
+    if (alongY) {
+      odo.correctOffset(0, error, CorrectionLog.GRID_LINE);
+    } else {
+      odo.correctOffset(error, 0, CorrectionLog.GRID_LINE);
+    }
+    correctionCount++;
+  }
+
+}
@@ -0,0 +1,71 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Immutable snapshot of the robot's position and heading, as returned by
+ * {@link OdometerData#getPose()}. Since a snapshot never changes, the same object is handed out
+ * again for as long as the odometer has not moved, so holding on to it or reading it several times
+ * in one decision costs nothing.
+ * 
+ * @author Carlo D'Angelo
+ */
+public final class Pose {
+
+  private final double x;
+  private final double y;
+  private final double theta;
+
+  /**
+   * Sequence number of the odometer data at which this snapshot was taken.
+   */
+  final int sequence;
+
+  /**
+   * Creates a snapshot.
+   * 
+   * @param x x-axis position (cm)
+   * @param y y-axis position (cm)
+   * @param theta heading (degrees)
+   * @param sequence sequence number of the odometer data when the snapshot was taken
+   */
+  Pose(double x, double y, double theta, int sequence) {
+    this.x = x;
+    this.y = y;
+    this.theta = theta;
+    this.sequence = sequence;
+  }
+
+  /**
+   * @return x-axis position (cm)
+   */
+  public double getX() {
+    return x;
+  }
+
+  /**
+   * @return y-axis position (cm)
+   */
+  public double getY() {
+    return y;
+  }
+
+  /**
+   * @return heading (degrees, between 0 and 360)
+   */
+  public double getTheta() {
+    return theta;
+  }
+
+  /**
+   * Copies this snapshot in the same layout as {@link OdometerData#getXYT()}.
+   * 
+   * @param position the array to fill: position[0] = x, position[1] = y, position[2] = theta
+   * @return the position array
+   */
+  public double[] toXYT(double[] position) {
+    position[0] = x;
+    position[1] = y;
+    position[2] = theta;
+    return position;
+  }
+
+}
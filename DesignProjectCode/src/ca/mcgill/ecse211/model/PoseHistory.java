@@ -0,0 +1,144 @@
+package ca.mcgill.ecse211.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-capacity ring buffer of time-stamped poses, written by the odometer thread on every update
+ * and read by any thread. It lets a sensor reading be matched with the pose the robot had at the
+ * instant the reading was taken, rather than the pose at the (later) instant the reading is
+ * processed.
+ * <p>
+ * Each entry takes four longs: the System.nanoTime() of the update, then x, y and theta (radians)
+ * stored as raw double bits. Readers never block the writer: they check after reading that the
+ * entries they used were not overwritten in the meantime, and read again if they were.
+ * 
+ * @author Carlo D'Angelo
+ */
+public class PoseHistory {
+
+  private static final int FIELDS = 4; // time, x, y, theta
+  private static final double TWO_PI = 2 * Math.PI;
+
+  private final AtomicLongArray entries;
+  private final int mask;
+  private final int capacity;
+
+  /**
+   * Number of entries written so far. Entry n is stored at index n & mask.
+   */
+  private volatile long count = 0;
+
+  /**
+   * This is the default constructor of this class.
+   * 
+   * @param capacity number of entries kept (rounded up to a power of two)
+   */
+  public PoseHistory(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    this.capacity = size;
+    this.mask = size - 1;
+    this.entries = new AtomicLongArray(size * FIELDS);
+  }
+
+  /**
+   * Adds an entry. Must only be called by one thread (the odometer's), with increasing times.
+   * 
+   * @param time System.nanoTime() at which the pose was valid
+   * @param x x-axis position (cm)
+   * @param y y-axis position (cm)
+   * @param thetaRad heading (radians)
+   */
+  public void record(long time, double x, double y, double thetaRad) {
+    long n = count;
+    int base = (int) (n & mask) * FIELDS;
+    entries.set(base, time);
+    entries.set(base + 1, Double.doubleToRawLongBits(x));
+    entries.set(base + 2, Double.doubleToRawLongBits(y));
+    entries.set(base + 3, Double.doubleToRawLongBits(thetaRad));
+    count = n + 1;
+  }
+
+  /**
+   * Returns the pose the robot had at the given time, interpolated between the two entries around
+   * it. A time later than the newest entry gives the newest entry.
+   * 
+   * @param time System.nanoTime() of interest
+   * @param position the array to store x, y and theta (degrees), as returned by getXYT()
+   * @return false if the history does not go back that far (position is then left untouched)
+   */
+  public boolean poseAt(long time, double[] position) {
+    while (true) {
+      long end = count;
+      if (end == 0) {
+        return false;
+      }
+      // The oldest slot may be the one being overwritten, so it is never used
+      long first = Math.max(0, end - capacity + 1);
+      long last = end - 1;
+      long before, after;
+      if (time - timeOf(last) >= 0) {
+        before = after = last;
+      } else if (time - timeOf(first) < 0) {
+        if (count - capacity + 1 > first) {
+          continue; // moved on while reading
+        }
+        return false;
+      } else {
+        // Newest entry at or before the requested time
+        long low = first, high = last;
+        while (low < high) {
+          long mid = (low + high + 1) >>> 1;
+          if (time - timeOf(mid) >= 0) {
+            low = mid;
+          } else {
+            high = mid - 1;
+          }
+        }
+        before = low;
+        after = low + 1;
+      }
+
+      long t0 = timeOf(before), t1 = timeOf(after);
+      double x0 = valueOf(before, 1), y0 = valueOf(before, 2), theta0 = valueOf(before, 3);
+      double x1 = valueOf(after, 1), y1 = valueOf(after, 2), theta1 = valueOf(after, 3);
+      if (count - capacity + 1 > before) {
+        continue; // entries overwritten while reading them, try again
+      }
+
+      double ratio = t1 == t0 ? 0 : (double) (time - t0) / (t1 - t0);
+      double dTheta = theta1 - theta0;
+      if (dTheta > Math.PI) { // crossed 0 while turning
+        dTheta -= TWO_PI;
+      } else if (dTheta < -Math.PI) {
+        dTheta += TWO_PI;
+      }
+      double theta = theta0 + ratio * dTheta;
+      if (theta < 0) {
+        theta += TWO_PI;
+      } else if (theta >= TWO_PI) {
+        theta -= TWO_PI;
+      }
+      position[0] = x0 + ratio * (x1 - x0);
+      position[1] = y0 + ratio * (y1 - y0);
+      position[2] = Math.toDegrees(theta);
+      return true;
+    }
+  }
+
+  /**
+   * @return System.nanoTime() of the newest entry, or 0 if there is none
+   */
+  public long getLatestTime() {
+    long end = count;
+    return end == 0 ? 0 : timeOf(end - 1);
+  }
+
+  private long timeOf(long n) {
+    return entries.get((int) (n & mask) * FIELDS);
+  }
+
+  private double valueOf(long n, int field) {
+    return Double.longBitsToDouble(entries.get((int) (n & mask) * FIELDS + field));
+  }
+
+}
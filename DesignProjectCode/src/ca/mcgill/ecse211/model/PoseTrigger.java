@@ -0,0 +1,201 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * A condition on the robot's pose, evaluated by the odometer thread after every update. Once
+ * registered with {@link Odometer#addTrigger(PoseTrigger)}, a trigger fires at most once: it is
+ * then removed from the odometer, {@link #onTrigger()} is called and the threads waiting in
+ * {@link #await()} are woken up. This lets a thread sleep until the robot has reached a heading, a
+ * distance or a region instead of polling getXYT() in a loop.
+ * <p>
+ * Conditions are evaluated on the odometer thread, so they must be quick and must not block.
+ * 
+ * @author Carlo D'Angelo
+ */
+public abstract class PoseTrigger {
+
+  private boolean fired = false;
+  private boolean cancelled = false;
+
+  /**
+   * Tells whether the condition is met. Called by the odometer thread after each update.
+   * 
+   * @param x x-axis position (cm)
+   * @param y y-axis position (cm)
+   * @param theta heading (degrees)
+   * @param distance total distance (cm) travelled by the robot since the odometer started
+   * @return true if the trigger must fire
+   */
+  protected abstract boolean test(double x, double y, double theta, double distance);
+
+  /**
+   * Called by the odometer thread when the trigger fires, before waiting threads are woken up.
+   * Does nothing by default.
+   */
+  protected void onTrigger() {}
+
+  /**
+   * Marks the trigger as fired and wakes up the threads waiting for it.
+   */
+  final void fire() {
+    onTrigger();
+    synchronized (this) {
+      fired = true;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Wakes up the threads waiting for the trigger without it having fired.
+   */
+  final synchronized void cancel() {
+    cancelled = true;
+    notifyAll();
+  }
+
+  /**
+   * Blocks until the trigger fires or is removed from the odometer.
+   * 
+   * @return true if the trigger fired
+   */
+  public synchronized boolean await() {
+    try {
+      while (!fired && !cancelled) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return fired;
+  }
+
+  /**
+   * Blocks until the trigger fires, is removed from the odometer or the timeout expires.
+   * 
+   * @param timeout maximum time to wait (ms)
+   * @return true if the trigger fired
+   */
+  public synchronized boolean await(long timeout) {
+    long end = System.currentTimeMillis() + timeout;
+    try {
+      long remaining = timeout;
+      while (!fired && !cancelled && remaining > 0) {
+        wait(remaining);
+        remaining = end - System.currentTimeMillis();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return fired;
+  }
+
+  /**
+   * @return true if the trigger has fired
+   */
+  public synchronized boolean hasFired() {
+    return fired;
+  }
+
+  /**
+   * Creates a trigger that fires when the heading crosses the given angle, in either direction.
+   * 
+   * @param angle heading (degrees) to watch
+   * @return the trigger
+   */
+  public static PoseTrigger headingCrosses(double angle) {
+    return new HeadingTrigger(angle);
+  }
+
+  /**
+   * Creates a trigger that fires once the robot has travelled the given distance (forward or
+   * backward) after the trigger was registered.
+   * 
+   * @param distance distance (cm)
+   * @return the trigger
+   */
+  public static PoseTrigger distanceTravelled(double distance) {
+    return new DistanceTrigger(distance);
+  }
+
+  /**
+   * Creates a trigger that fires when the robot is inside the given rectangle (immediately if it
+   * already is).
+   * 
+   * @param minX lowest x-coordinate of the region (cm)
+   * @param minY lowest y-coordinate of the region (cm)
+   * @param maxX highest x-coordinate of the region (cm)
+   * @param maxY highest y-coordinate of the region (cm)
+   * @return the trigger
+   */
+  public static PoseTrigger regionEntered(double minX, double minY, double maxX, double maxY) {
+    return new RegionTrigger(minX, minY, maxX, maxY);
+  }
+
+  /**
+   * Fires when the heading crosses an angle.
+   */
+  private static class HeadingTrigger extends PoseTrigger {
+
+    private final double angle;
+    private double previous = Double.NaN; // offset to the angle at the previous update
+
+    HeadingTrigger(double angle) {
+      this.angle = angle;
+    }
+
+    @Override
+    protected boolean test(double x, double y, double theta, double distance) {
+      double offset = theta - angle;
+      if (offset > 180) { // keep the offset between -180 and 180
+        offset -= 360;
+      } else if (offset <= -180) {
+        offset += 360;
+      }
+      boolean crossed = offset == 0
+          || (previous * offset < 0 && Math.abs(previous - offset) < 180);
+      previous = offset;
+      return crossed;
+    }
+  }
+
+  /**
+   * Fires after a distance has been travelled.
+   */
+  private static class DistanceTrigger extends PoseTrigger {
+
+    private final double length;
+    private double start = Double.NaN; // odometer distance at the first evaluation
+
+    DistanceTrigger(double length) {
+      this.length = length;
+    }
+
+    @Override
+    protected boolean test(double x, double y, double theta, double distance) {
+      if (Double.isNaN(start)) {
+        start = distance;
+      }
+      return distance - start >= length;
+    }
+  }
+
+  /**
+   * Fires when the robot is inside a rectangle.
+   */
+  private static class RegionTrigger extends PoseTrigger {
+
+    private final double minX, minY, maxX, maxY;
+
+    RegionTrigger(double minX, double minY, double maxX, double maxY) {
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+    }
+
+    @Override
+    protected boolean test(double x, double y, double theta, double distance) {
+      return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+  }
+
+}
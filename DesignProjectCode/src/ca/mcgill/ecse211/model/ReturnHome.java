@@ -15,7 +15,7 @@ public class ReturnHome {
 	/**
 	 * Distance that the robot travels within the starting corner before off-loading the cans.
 	 */
-	private static final int CANDROP_DISTANCE = 13;
+	static final int CANDROP_DISTANCE = 13;
 	private int startingCorner, homeZoneLLX, homeZoneLLY, homeZoneURX, homeZoneURY,
 					tunnelLLX, tunnelLLY, tunnelURX, tunnelURY;
 	private int islandLLX, islandLLY, islandURX, islandURY,
@@ -23,6 +23,9 @@ public class ReturnHome {
 	private LightLocalizer lightLocalizer;
 	private Navigation navigator;
 	private Clamp clamp;
+	private Odometer odo;
+	private RouteTable routeTable;
+	private RouteFollower routeFollower;
 	
 	/**
 	 * This is the default constructor of this class.
@@ -54,6 +57,17 @@ public class ReturnHome {
 		this.lightLocalizer = lightLocalizer;
 		this.navigator = navigator;
 		this.clamp = clamp;
+		this.odo = Odometer.getOdometer();
+		this.routeFollower = new RouteFollower(navigator, lightLocalizer);
+	}
+	
+	/**
+	 * Method that makes goHome() follow the planned route of the table instead of the scripted one.
+	 * The scripted route is still used if the table has no route.
+	 * @param routeTable routes of the game, or null for the scripted routes
+	 */
+	public void setRouteTable(RouteTable routeTable) {
+		this.routeTable = routeTable;
 	}
 	
 	/**
@@ -62,6 +76,13 @@ public class ReturnHome {
 	 * and where the tunnels are located.
 	 */
 	public void goHome() {
+		navigator.setPipelined(true); // queue the moves, lightLocalize() waits for them
+		navigator.setBuffering(true); // and merge the ones that can be
+		if (routeTable != null && goHomePlanned()) {
+			navigator.setBuffering(false);
+			navigator.setPipelined(false);
+			return;
+		}
 		switch(startingCorner){
 			case 0: 
 				// go back to corner 0
@@ -132,6 +153,7 @@ public class ReturnHome {
 					issueOffloadBeeps();
 					navigator.turnTo(-135);
 					navigator.driveForward(CANDROP_DISTANCE);
+					navigator.waitForMotion();
 					clamp.offloadCan();
 					navigator.driveBack(CANDROP_DISTANCE);
 					navigator.turnTo(180);
@@ -205,6 +227,7 @@ public class ReturnHome {
 					issueOffloadBeeps();
 					navigator.turnTo(-135);
 					navigator.driveForward(CANDROP_DISTANCE);
+					navigator.waitForMotion();
 					clamp.offloadCan();
 					navigator.driveBack(CANDROP_DISTANCE);
 					navigator.turnTo(180);
@@ -278,6 +301,7 @@ public class ReturnHome {
 					issueOffloadBeeps();
 					navigator.turnTo(135);
 					navigator.driveForward(CANDROP_DISTANCE);
+					navigator.waitForMotion();
 					clamp.offloadCan();
 					navigator.driveBack(CANDROP_DISTANCE);
 					navigator.turnTo(-90);
@@ -353,6 +377,7 @@ public class ReturnHome {
 					issueOffloadBeeps();
 					navigator.turnTo(135);
 					navigator.driveForward(CANDROP_DISTANCE);
+					navigator.waitForMotion();
 					clamp.offloadCan();
 					navigator.driveBack(CANDROP_DISTANCE);
 					navigator.turnTo(-90);
@@ -425,6 +450,7 @@ public class ReturnHome {
 					issueOffloadBeeps();
 					navigator.turnTo(45);
 					navigator.driveForward(CANDROP_DISTANCE);
+					navigator.waitForMotion();
 					clamp.offloadCan();
 					navigator.driveBack(CANDROP_DISTANCE);
 					lightLocalizer.lightLocalize(homeZoneURX - 1, homeZoneURY - 1);
@@ -494,6 +520,7 @@ public class ReturnHome {
 					issueOffloadBeeps();
 					navigator.turnTo(45);
 					navigator.driveForward(CANDROP_DISTANCE);
+					navigator.waitForMotion();
 					clamp.offloadCan();
 					navigator.driveBack(CANDROP_DISTANCE);
 					lightLocalizer.lightLocalize(homeZoneURX - 1, homeZoneURY - 1);
@@ -569,6 +596,7 @@ public class ReturnHome {
 					issueOffloadBeeps();
 					navigator.turnTo(-45);
 					navigator.driveForward(CANDROP_DISTANCE);
+					navigator.waitForMotion();
 					clamp.offloadCan();
 					navigator.driveBack(CANDROP_DISTANCE);
 					navigator.turnTo(90);
@@ -642,6 +670,7 @@ public class ReturnHome {
 					issueOffloadBeeps();
 					navigator.turnTo(-45);
 					navigator.driveForward(CANDROP_DISTANCE);
+					navigator.waitForMotion();
 					clamp.offloadCan();
 					navigator.driveBack(CANDROP_DISTANCE);
 					navigator.turnTo(90);
@@ -654,13 +683,44 @@ public class ReturnHome {
 		        System.exit(-1);
 		        break;
 		}
-		
+		navigator.setBuffering(false);
+		navigator.setPipelined(false);
+	}
+	
+	/**
+	 * Method that follows the planned route to the starting corner, off-loads the cans there
+	 * and localizes again, facing away from the walls.
+	 * @return false if the table has no route home
+	 */
+	private boolean goHomePlanned() {
+		double[] position = new double[3];
+		navigator.waitForMotion();
+		odo.getXYT(position);
+		Route route = routeTable.getRouteHome(position[0] / TILE_SIZE, position[1] / TILE_SIZE);
+		if (route == null) {
+			return false;
+		}
+		routeFollower.follow(route); // ends with a light localization, facing 0 degrees
+		double startX = routeTable.getStartX();
+		double startY = routeTable.getStartY();
+		double offloadHeading = routeTable.getStartHeading() + 225; // toward the corner
+		issueOffloadBeeps();
+		navigator.turnTo(Math.IEEEremainder(offloadHeading, 360));
+		navigator.driveForward(CANDROP_DISTANCE);
+		navigator.waitForMotion();
+		clamp.offloadCan();
+		navigator.driveBack(CANDROP_DISTANCE);
+		navigator.turnTo(Math.IEEEremainder(45 - offloadHeading, 360));
+		lightLocalizer.lightLocalize(startX, startY);
+		navigator.turnTo(Math.IEEEremainder(routeTable.getStartHeading(), 360));
+		return true;
 	}
 	
 	/**
 	 * Method that delivers the required beeps when the robot arrives at the starting corner.
 	 */
 	private void issueOffloadBeeps() {
+		navigator.waitForMotion(); // beep once the robot has arrived
 		Sound.beep();
 		Sound.pause(100);
 		Sound.beep();
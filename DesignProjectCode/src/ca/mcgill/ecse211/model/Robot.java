@@ -2,7 +2,9 @@ package ca.mcgill.ecse211.model;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.json.simple.parser.ParseException;
 
@@ -295,4 +297,23 @@ public class Robot {
 		}
 		return searchZoneURY;
 	}
+	
+	/**
+	 * This method computes a hash of all the game parameters and of the team number.
+	 * The same parameters give the same hash from one run to the next, so that it can
+	 * be used as the key of the data saved for a layout (e.g., the RouteTable).
+	 * @return hash of the game parameters
+	 */
+	@SuppressWarnings("unchecked") // the map from the WiFi class is raw
+	public int hashParameters() {
+		int hash = TEAM_NUMBER;
+		Iterator<Map.Entry<Object, Object>> entries =
+				new TreeMap<Object, Object>(data).entrySet().iterator(); // in the order of the keys
+		while (entries.hasNext()) {
+			Map.Entry<Object, Object> entry = entries.next();
+			hash = 31 * hash + entry.getKey().hashCode();
+			hash = 31 * hash + (entry.getValue() == null ? 0 : entry.getValue().hashCode());
+		}
+		return hash;
+	}
 }
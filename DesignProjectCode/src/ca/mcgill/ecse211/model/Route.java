@@ -0,0 +1,125 @@
+package ca.mcgill.ecse211.model;
+
+import java.util.Arrays;
+
+/**
+ * A list of waypoints (in tiles) planned by the {@link RoutePlanner}. The robot drives to each
+ * waypoint in turn with travelTo(); the waypoints flagged as localization points are grid
+ * intersections where it performs a light localization once it gets there.
+ *
+ * @author Carlo D'Angelo
+ */
+public class Route {
+
+  private double[] x = new double[16];
+  private double[] y = new double[16];
+  private boolean[] localize = new boolean[16];
+  private int size = 0;
+
+  /**
+   * Adds a waypoint at the end of the route. A waypoint at the same place as the last one only
+   * updates its localization flag.
+   *
+   * @param pointX x coordinate (in tiles)
+   * @param pointY y coordinate (in tiles)
+   * @param localization true to localize at this waypoint
+   */
+  void add(double pointX, double pointY, boolean localization) {
+    if (size > 0 && x[size - 1] == pointX && y[size - 1] == pointY) {
+      localize[size - 1] |= localization;
+      return;
+    }
+    if (size == x.length) {
+      x = Arrays.copyOf(x, 2 * size);
+      y = Arrays.copyOf(y, 2 * size);
+      localize = Arrays.copyOf(localize, 2 * size);
+    }
+    x[size] = pointX;
+    y[size] = pointY;
+    localize[size] = localization;
+    size++;
+  }
+
+  /**
+   * Adds all the waypoints of another route, except its first one if it is where this route
+   * already ends.
+   *
+   * @param route route to append
+   */
+  void append(Route route) {
+    for (int i = 0; i < route.size; i++) {
+      add(route.x[i], route.y[i], route.localize[i]);
+    }
+  }
+
+  /**
+   * @return number of waypoints, the first one being where the robot starts
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param i index of the waypoint
+   * @return x coordinate of the waypoint (in tiles)
+   */
+  public double getX(int i) {
+    return x[i];
+  }
+
+  /**
+   * @param i index of the waypoint
+   * @return y coordinate of the waypoint (in tiles)
+   */
+  public double getY(int i) {
+    return y[i];
+  }
+
+  /**
+   * @param i index of the waypoint
+   * @return true if the robot localizes at the waypoint
+   */
+  public boolean isLocalization(int i) {
+    return localize[i];
+  }
+
+  /**
+   * @return length of the route (in tiles)
+   */
+  public double getLength() {
+    double length = 0;
+    for (int i = 1; i < size; i++) {
+      length += Math.hypot(x[i] - x[i - 1], y[i] - y[i - 1]);
+    }
+    return length;
+  }
+
+  /**
+   * @return sum of the turns (in degrees) between the legs of the route
+   */
+  public double getTurning() {
+    double turning = 0;
+    for (int i = 2; i < size; i++) {
+      double before = Math.atan2(x[i - 1] - x[i - 2], y[i - 1] - y[i - 2]);
+      double after = Math.atan2(x[i] - x[i - 1], y[i] - y[i - 1]);
+      turning += Math.abs(Math.IEEEremainder(Math.toDegrees(after - before), 360));
+    }
+    return turning;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        text.append(" -> ");
+      }
+      text.append('(').append(x[i]).append(", ").append(y[i]).append(')');
+      if (localize[i]) {
+        text.append('L');
+      }
+    }
+    return text.toString();
+  }
+
+}
@@ -0,0 +1,56 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Drives the robot along a {@link Route}: travelTo() each waypoint and light localize at the
+ * waypoints flagged for it.
+ *
+ * @author Carlo D'Angelo
+ */
+public class RouteFollower {
+
+  /**
+   * Heading (in degrees) lightLocalize() expects the robot to start from.
+   */
+  private static final double LOCALIZATION_HEADING = 45;
+
+  private final Navigation navigator;
+  private final LightLocalizer lightLocalizer;
+
+  /**
+   * Creates a follower.
+   *
+   * @param navigator instance of the Navigation class
+   * @param lightLocalizer instance of the LightLocalizer class
+   */
+  public RouteFollower(Navigation navigator, LightLocalizer lightLocalizer) {
+    this.navigator = navigator;
+    this.lightLocalizer = lightLocalizer;
+  }
+
+  /**
+   * Drives along a route, from its first waypoint which is where the robot is. The navigator may
+   * be pipelined: the heading at a localization point is then predicted from the last leg, since
+   * the odometer lags behind the queued moves. A localization whose lines do not fit the grid is
+   * tried once more.
+   *
+   * @param route route to follow
+   */
+  public void follow(Route route) {
+    for (int i = 1; i < route.size(); i++) {
+      double x = route.getX(i);
+      double y = route.getY(i);
+      navigator.travelTo(x, y);
+      if (route.isLocalization(i)) {
+        double heading = Math.toDegrees(Math.atan2(x - route.getX(i - 1), y - route.getY(i - 1)));
+        double turn = Math.IEEEremainder(LOCALIZATION_HEADING - heading, 360);
+        navigator.turnTo(turn);
+        if (!lightLocalizer.lightLocalize(x, y)) {
+          // the robot is at the point facing 0 degrees, close enough to try again
+          navigator.turnTo(LOCALIZATION_HEADING);
+          lightLocalizer.lightLocalize(x, y);
+        }
+      }
+    }
+  }
+
+}
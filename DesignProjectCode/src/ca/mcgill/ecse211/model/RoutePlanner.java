@@ -0,0 +1,601 @@
+package ca.mcgill.ecse211.model;
+
+import java.util.Arrays;
+
+/**
+ * Plans routes over the game field with A*, instead of scripting them for every starting corner
+ * and tunnel position.
+ * <p>
+ * The field is an occupancy grid of tiles: land (home zone, tunnel, island) or water. The robot is
+ * planned as a point that must stay at least CLEARANCE away from water, on a lattice with a node
+ * every half tile, so that it can drive down the middle of a one tile wide tunnel. Moves go to the
+ * 8 neighbouring nodes and every 45 degrees of turn costs TURN_PENALTY, so straight routes are
+ * preferred. The lattice path is then shortened by cutting its corners wherever the straight line
+ * stays clear of the water.
+ * <p>
+ * Routes through the tunnel localize at a grid intersection in front of each end of the tunnel,
+ * and every route localizes at its destination.
+ *
+ * @author Carlo D'Angelo
+ */
+public class RoutePlanner {
+
+  /**
+   * Size of the game field (in tiles).
+   */
+  public static final int FIELD_WIDTH = 15;
+  public static final int FIELD_HEIGHT = 9;
+
+  /**
+   * Smallest distance (in tiles) between the center of the robot and the water.
+   */
+  private static final double CLEARANCE = 0.5;
+
+  /**
+   * Cost (in tiles of driving) of every 45 degrees of turn.
+   */
+  private static final double TURN_PENALTY = 0.5;
+
+  /**
+   * Step (in tiles) at which straight lines are checked when cutting corners.
+   */
+  private static final double SAMPLE_STEP = 0.05;
+
+  // Directions of the moves, clockwise from +y like the heading of the odometer
+  private static final int DIRECTIONS = 8;
+  private static final int[] DX = {0, 1, 1, 1, 0, -1, -1, -1};
+  private static final int[] DY = {1, 1, 0, -1, -1, -1, 0, 1};
+  private static final int NO_DIRECTION = DIRECTIONS; // at the start of a route
+
+  private final int width;
+  private final int height;
+  private final boolean[] land; // per tile, x + y * width
+
+  // Lattice of nodes every half tile, node (i, j) at (i / 2, j / 2) tiles
+  private final int columns;
+  private final int rows;
+  private final boolean[] free;
+  private boolean freeValid = false;
+
+  // A* state: node * (DIRECTIONS + 1) + direction of arrival
+  private final double[] cost;
+  private final int[] parent;
+  private final boolean[] closed;
+  private int[] heap = new int[256];
+  private double[] heapKey = new double[256];
+  private int heapSize;
+  private double lastCost; // cost of the last leg planned
+  private final int[] pathNodes;
+
+  // Game features
+  private boolean hasTunnel = false;
+  private int tunnelLLX, tunnelLLY, tunnelURX, tunnelURY;
+  private int homeLLX, homeLLY, homeURX, homeURY;
+  private int searchZoneLLX, searchZoneLLY, searchZoneURX, searchZoneURY;
+  private double startX, startY, startHeading;
+  private MotionCostModel costModel;
+
+  /**
+   * Creates a planner for a field of water.
+   *
+   * @param width width of the field (in tiles)
+   * @param height height of the field (in tiles)
+   */
+  public RoutePlanner(int width, int height) {
+    this.width = width;
+    this.height = height;
+    land = new boolean[width * height];
+    columns = 2 * width + 1;
+    rows = 2 * height + 1;
+    free = new boolean[columns * rows];
+    int states = columns * rows * (DIRECTIONS + 1);
+    cost = new double[states];
+    parent = new int[states];
+    closed = new boolean[states];
+    pathNodes = new int[columns * rows];
+  }
+
+  /**
+   * Builds the planner of a game from its parameters: the home zone, the tunnel and the island
+   * are land, the route starts at the starting corner and goes to the search zone.
+   *
+   * @param robot game parameters
+   * @return the planner
+   */
+  public static RoutePlanner forGame(Robot robot) {
+    RoutePlanner planner = new RoutePlanner(FIELD_WIDTH, FIELD_HEIGHT);
+    planner.setHomeZone(robot.getHomeZoneLLX(), robot.getHomeZoneLLY(), robot.getHomeZoneURX(),
+        robot.getHomeZoneURY(), robot.getStartingCorner());
+    planner.addLand(robot.getIslandLLX(), robot.getIslandLLY(), robot.getIslandURX(),
+        robot.getIslandURY());
+    planner.setTunnel(robot.getTunnelLLX(), robot.getTunnelLLY(), robot.getTunnelURX(),
+        robot.getTunnelURY());
+    planner.setSearchZone(robot.getSearchZoneLLX(), robot.getSearchZoneLLY(),
+        robot.getSearchZoneURX(), robot.getSearchZoneURY());
+    return planner;
+  }
+
+  /**
+   * Marks a rectangle of tiles as land.
+   *
+   * @param llx x coordinate of the lower left corner
+   * @param lly y coordinate of the lower left corner
+   * @param urx x coordinate of the upper right corner
+   * @param ury y coordinate of the upper right corner
+   */
+  public void addLand(int llx, int lly, int urx, int ury) {
+    for (int x = Math.max(0, llx); x < Math.min(width, urx); x++) {
+      for (int y = Math.max(0, lly); y < Math.min(height, ury); y++) {
+        land[x + y * width] = true;
+      }
+    }
+    freeValid = false;
+  }
+
+  /**
+   * Sets the home zone (land) and the starting corner, where the robot starts and comes back to.
+   *
+   * @param llx x coordinate of the lower left corner
+   * @param lly y coordinate of the lower left corner
+   * @param urx x coordinate of the upper right corner
+   * @param ury y coordinate of the upper right corner
+   * @param startingCorner starting corner (0 to 3)
+   */
+  public void setHomeZone(int llx, int lly, int urx, int ury, int startingCorner) {
+    addLand(llx, lly, urx, ury);
+    homeLLX = llx;
+    homeLLY = lly;
+    homeURX = urx;
+    homeURY = ury;
+    // first grid intersection from the corner, as after the initial localization
+    startX = startingCorner == 0 || startingCorner == 3 ? llx + 1 : urx - 1;
+    startY = startingCorner == 0 || startingCorner == 1 ? lly + 1 : ury - 1;
+    startHeading = (360 - 90 * startingCorner) % 360; // facing away from the walls
+  }
+
+  /**
+   * Sets the tunnel (land). Routes through it localize in front of both of its ends.
+   *
+   * @param llx x coordinate of the lower left corner
+   * @param lly y coordinate of the lower left corner
+   * @param urx x coordinate of the upper right corner
+   * @param ury y coordinate of the upper right corner
+   */
+  public void setTunnel(int llx, int lly, int urx, int ury) {
+    addLand(llx, lly, urx, ury);
+    hasTunnel = true;
+    tunnelLLX = llx;
+    tunnelLLY = lly;
+    tunnelURX = urx;
+    tunnelURY = ury;
+  }
+
+  /**
+   * Sets the search zone. Only its corners matter, the island around it is the land.
+   *
+   * @param llx x coordinate of the lower left corner
+   * @param lly y coordinate of the lower left corner
+   * @param urx x coordinate of the upper right corner
+   * @param ury y coordinate of the upper right corner
+   */
+  public void setSearchZone(int llx, int lly, int urx, int ury) {
+    searchZoneLLX = llx;
+    searchZoneLLY = lly;
+    searchZoneURX = urx;
+    searchZoneURY = ury;
+  }
+
+  /**
+   * @return x coordinate (in tiles) of the grid intersection the robot starts from
+   */
+  public double getStartX() {
+    return startX;
+  }
+
+  /**
+   * @return y coordinate (in tiles) of the grid intersection the robot starts from
+   */
+  public double getStartY() {
+    return startY;
+  }
+
+  /**
+   * @return x coordinate of the lower left corner of the search zone
+   */
+  public int getSearchZoneLLX() {
+    return searchZoneLLX;
+  }
+
+  /**
+   * @return y coordinate of the lower left corner of the search zone
+   */
+  public int getSearchZoneLLY() {
+    return searchZoneLLY;
+  }
+
+  /**
+   * @return x coordinate of the upper right corner of the search zone
+   */
+  public int getSearchZoneURX() {
+    return searchZoneURX;
+  }
+
+  /**
+   * @return y coordinate of the upper right corner of the search zone
+   */
+  public int getSearchZoneURY() {
+    return searchZoneURY;
+  }
+
+  /**
+   * @return heading (in degrees) of the robot at the starting corner after the initial
+   *         localization, facing away from the walls
+   */
+  public double getStartHeading() {
+    return startHeading;
+  }
+
+  /**
+   * Sets the model used to compare routes by time, instead of by their planning cost.
+   *
+   * @param costModel cost model, or null to compare the planning costs
+   */
+  public void setCostModel(MotionCostModel costModel) {
+    this.costModel = costModel;
+  }
+
+  /**
+   * Plans the route from the starting corner to the closest corner of the search zone where the
+   * search can start (lower left or upper right).
+   *
+   * @return the route, or null if the search zone cannot be reached
+   */
+  public Route planToSearchZone() {
+    Route lowerLeft = plan(startX, startY, searchZoneLLX, searchZoneLLY);
+    double lowerLeftCost = routeCost(lowerLeft);
+    Route upperRight = plan(startX, startY, searchZoneURX, searchZoneURY);
+    if (lowerLeft == null || (upperRight != null && routeCost(upperRight) < lowerLeftCost)) {
+      return upperRight;
+    }
+    return lowerLeft;
+  }
+
+  /**
+   * Plans the route from a point back to the starting corner.
+   *
+   * @param x x coordinate of the robot (in tiles)
+   * @param y y coordinate of the robot (in tiles)
+   * @return the route, or null if the starting corner cannot be reached
+   */
+  public Route planHome(double x, double y) {
+    return plan(x, y, startX, startY);
+  }
+
+  /**
+   * Plans a route between two points. When one is in the home zone and the other is not, the
+   * route goes through the tunnel and localizes in front of both of its ends.
+   *
+   * @param fromX x coordinate of the start (in tiles)
+   * @param fromY y coordinate of the start (in tiles)
+   * @param toX x coordinate of the destination (in tiles)
+   * @param toY y coordinate of the destination (in tiles)
+   * @return the route, or null if there is none
+   */
+  public Route plan(double fromX, double fromY, double toX, double toY) {
+    buildFree();
+    if (!hasTunnel || inHomeZone(fromX, fromY) == inHomeZone(toX, toY)) {
+      Route route = leg(fromX, fromY, toX, toY);
+      if (route != null) {
+        route.add(toX, toY, true);
+      }
+      return route;
+    }
+
+    // Candidate grid intersections in front of each end of the tunnel
+    boolean horizontal = isLand(tunnelLLX - 1, tunnelLLY) && isLand(tunnelURX, tunnelLLY);
+    double[] first = horizontal
+        ? new double[] {tunnelLLX - 1, tunnelLLY, tunnelLLX - 1, tunnelURY}
+        : new double[] {tunnelLLX, tunnelLLY - 1, tunnelURX, tunnelLLY - 1};
+    double[] second = horizontal
+        ? new double[] {tunnelURX + 1, tunnelLLY, tunnelURX + 1, tunnelURY}
+        : new double[] {tunnelLLX, tunnelURY + 1, tunnelURX, tunnelURY + 1};
+
+    Route best = null;
+    double bestCost = Double.POSITIVE_INFINITY;
+    for (int order = 0; order < 2; order++) {
+      double[] entries = order == 0 ? first : second;
+      double[] exits = order == 0 ? second : first;
+      for (int a = 0; a < entries.length; a += 2) {
+        for (int b = 0; b < exits.length; b += 2) {
+          if (!isClear(entries[a], entries[a + 1]) || !isClear(exits[b], exits[b + 1])) {
+            continue;
+          }
+          Route toTunnel = leg(fromX, fromY, entries[a], entries[a + 1]);
+          double total = lastCost;
+          if (toTunnel == null || total >= bestCost) {
+            continue;
+          }
+          Route through = leg(entries[a], entries[a + 1], exits[b], exits[b + 1]);
+          total += lastCost;
+          if (through == null || total >= bestCost) {
+            continue;
+          }
+          Route fromTunnel = leg(exits[b], exits[b + 1], toX, toY);
+          total += lastCost;
+          if (fromTunnel == null || total >= bestCost) {
+            continue;
+          }
+          toTunnel.add(entries[a], entries[a + 1], true);
+          toTunnel.append(through);
+          toTunnel.add(exits[b], exits[b + 1], true);
+          toTunnel.append(fromTunnel);
+          toTunnel.add(toX, toY, true);
+          best = toTunnel;
+          bestCost = total;
+        }
+      }
+    }
+    lastCost = bestCost;
+    return best;
+  }
+
+  /**
+   * Cost of the route just planned: its estimated time if there is a cost model, its planning
+   * cost otherwise.
+   */
+  private double routeCost(Route route) {
+    if (route == null) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return costModel == null ? lastCost : costModel.estimateRoute(route, startHeading);
+  }
+
+  /**
+   * Plans a route between two points with A* on the lattice, then cuts its corners. Its cost is
+   * left in lastCost.
+   *
+   * @return the route, or null if there is none
+   */
+  private Route leg(double fromX, double fromY, double toX, double toY) {
+    int start = nearestFreeNode(fromX, fromY);
+    int goal = nearestFreeNode(toX, toY);
+    lastCost = Double.POSITIVE_INFINITY;
+    if (start < 0 || goal < 0) {
+      return null;
+    }
+    int end = search(start, goal);
+    if (end < 0) {
+      return null;
+    }
+    lastCost = cost[end];
+
+    // lattice path, from the start to the goal
+    int length = 0;
+    for (int state = end; state >= 0; state = parent[state]) {
+      pathNodes[length++] = state / (DIRECTIONS + 1);
+    }
+    for (int i = 0, j = length - 1; i < j; i++, j--) {
+      int node = pathNodes[i];
+      pathNodes[i] = pathNodes[j];
+      pathNodes[j] = node;
+    }
+
+    Route route = new Route();
+    route.add(fromX, fromY, false);
+    int current = 0;
+    route.add(nodeX(pathNodes[0]), nodeY(pathNodes[0]), false);
+    while (current < length - 1) {
+      int next = length - 1;
+      while (next > current + 1 && !lineOfSight(pathNodes[current], pathNodes[next])) {
+        next--;
+      }
+      route.add(nodeX(pathNodes[next]), nodeY(pathNodes[next]), false);
+      current = next;
+    }
+    route.add(toX, toY, false);
+    return route;
+  }
+
+  /**
+   * A* from a node to another.
+   *
+   * @return the state in which the goal was reached, or -1 if it cannot be
+   */
+  private int search(int start, int goal) {
+    Arrays.fill(cost, Double.POSITIVE_INFINITY);
+    Arrays.fill(closed, false);
+    heapSize = 0;
+    int first = start * (DIRECTIONS + 1) + NO_DIRECTION;
+    cost[first] = 0;
+    parent[first] = -1;
+    push(first, distance(start, goal));
+
+    while (heapSize > 0) {
+      int state = pop();
+      if (closed[state]) {
+        continue; // outdated entry
+      }
+      closed[state] = true;
+      int node = state / (DIRECTIONS + 1);
+      int direction = state % (DIRECTIONS + 1);
+      if (node == goal) {
+        return state;
+      }
+      int i = node % columns;
+      int j = node / columns;
+      for (int d = 0; d < DIRECTIONS; d++) {
+        int ni = i + DX[d];
+        int nj = j + DY[d];
+        if (ni < 0 || nj < 0 || ni >= columns || nj >= rows || !free[ni + nj * columns]) {
+          continue;
+        }
+        boolean diagonal = DX[d] != 0 && DY[d] != 0;
+        if (diagonal && (!free[ni + j * columns] || !free[i + nj * columns])) {
+          continue; // do not cut the corner of the water
+        }
+        double step = diagonal ? 0.5 * Math.sqrt(2) : 0.5;
+        if (direction != NO_DIRECTION) {
+          int turn = Math.abs(d - direction);
+          step += Math.min(turn, DIRECTIONS - turn) * TURN_PENALTY;
+        }
+        int neighbour = ni + nj * columns;
+        int next = neighbour * (DIRECTIONS + 1) + d;
+        double nextCost = cost[state] + step;
+        if (nextCost < cost[next]) {
+          cost[next] = nextCost;
+          parent[next] = state;
+          push(next, nextCost + distance(neighbour, goal));
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Works out which lattice nodes are far enough from the water, after the land changed.
+   */
+  private void buildFree() {
+    if (freeValid) {
+      return;
+    }
+    for (int node = 0; node < free.length; node++) {
+      free[node] = isClear(nodeX(node), nodeY(node));
+    }
+    freeValid = true;
+  }
+
+  /**
+   * @return true if the point is at least CLEARANCE away from the water
+   */
+  private boolean isClear(double x, double y) {
+    int minX = (int) Math.floor(x - CLEARANCE);
+    int maxX = (int) Math.floor(x + CLEARANCE);
+    int minY = (int) Math.floor(y - CLEARANCE);
+    int maxY = (int) Math.floor(y + CLEARANCE);
+    for (int tx = minX; tx <= maxX; tx++) {
+      for (int ty = minY; ty <= maxY; ty++) {
+        if (isLand(tx, ty)) {
+          continue;
+        }
+        double dx = Math.max(0, Math.max(tx - x, x - (tx + 1)));
+        double dy = Math.max(0, Math.max(ty - y, y - (ty + 1)));
+        if (dx * dx + dy * dy < CLEARANCE * CLEARANCE - 1e-9) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the tile is land (tiles outside of the field are water)
+   */
+  private boolean isLand(int x, int y) {
+    return x >= 0 && y >= 0 && x < width && y < height && land[x + y * width];
+  }
+
+  /**
+   * @return true if the straight line between two nodes stays clear of the water
+   */
+  private boolean lineOfSight(int from, int to) {
+    double x0 = nodeX(from), y0 = nodeY(from);
+    double dx = nodeX(to) - x0, dy = nodeY(to) - y0;
+    int steps = (int) Math.ceil(Math.hypot(dx, dy) / SAMPLE_STEP);
+    for (int k = 1; k < steps; k++) {
+      if (!isClear(x0 + dx * k / steps, y0 + dy * k / steps)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the free node closest to a point, within one tile, or -1 if there is none
+   */
+  private int nearestFreeNode(double x, double y) {
+    int best = -1;
+    double bestDistance = Double.POSITIVE_INFINITY;
+    int ci = (int) Math.round(2 * x);
+    int cj = (int) Math.round(2 * y);
+    for (int i = ci - 2; i <= ci + 2; i++) {
+      for (int j = cj - 2; j <= cj + 2; j++) {
+        if (i < 0 || j < 0 || i >= columns || j >= rows || !free[i + j * columns]) {
+          continue;
+        }
+        double d = Math.hypot(i / 2.0 - x, j / 2.0 - y);
+        if (d < bestDistance) {
+          bestDistance = d;
+          best = i + j * columns;
+        }
+      }
+    }
+    return best;
+  }
+
+  private boolean inHomeZone(double x, double y) {
+    return x >= homeLLX && x <= homeURX && y >= homeLLY && y <= homeURY;
+  }
+
+  private double nodeX(int node) {
+    return (node % columns) / 2.0;
+  }
+
+  private double nodeY(int node) {
+    return (node / columns) / 2.0;
+  }
+
+  private double distance(int from, int to) {
+    return Math.hypot(nodeX(to) - nodeX(from), nodeY(to) - nodeY(from));
+  }
+
+  /**
+   * Adds a state to the binary heap of the open states.
+   */
+  private void push(int state, double key) {
+    if (heapSize == heap.length) {
+      heap = Arrays.copyOf(heap, 2 * heapSize);
+      heapKey = Arrays.copyOf(heapKey, 2 * heapSize);
+    }
+    int i = heapSize++;
+    while (i > 0) {
+      int up = (i - 1) / 2;
+      if (heapKey[up] <= key) {
+        break;
+      }
+      heap[i] = heap[up];
+      heapKey[i] = heapKey[up];
+      i = up;
+    }
+    heap[i] = state;
+    heapKey[i] = key;
+  }
+
+  /**
+   * Removes the open state with the lowest key from the heap.
+   */
+  private int pop() {
+    int top = heap[0];
+    int last = heap[--heapSize];
+    double key = heapKey[heapSize];
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && heapKey[child + 1] < heapKey[child]) {
+        child++;
+      }
+      if (heapKey[child] >= key) {
+        break;
+      }
+      heap[i] = heap[child];
+      heapKey[i] = heapKey[child];
+      i = child;
+    }
+    heap[i] = last;
+    heapKey[i] = key;
+    return top;
+  }
+
+}
@@ -0,0 +1,230 @@
+package ca.mcgill.ecse211.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * All the routes of a game, planned once by the {@link RoutePlanner} right after the game
+ * parameters arrive and served from memory for every trip: from the starting corner to the search
+ * zone, and back home from the lower left and the upper right corners of the search zone (where
+ * the can search ends).
+ * <p>
+ * The waypoints of all the routes are packed in primitive arrays. The table can be saved to a
+ * file and loaded back for the same game parameters, to skip the planning when a layout is
+ * replayed.
+ *
+ * @author Carlo D'Angelo
+ */
+public class RouteTable {
+
+  /**
+   * Route from the starting corner to the search zone.
+   */
+  public static final int TO_SEARCH_ZONE = 0;
+
+  /**
+   * Route from the lower left corner of the search zone to the starting corner.
+   */
+  public static final int HOME_FROM_LL = 1;
+
+  /**
+   * Route from the upper right corner of the search zone to the starting corner.
+   */
+  public static final int HOME_FROM_UR = 2;
+
+  private static final int ROUTES = 3;
+
+  /**
+   * Version of the file format and of the planning, files of other versions are not loaded.
+   */
+  private static final int FORMAT = 1;
+
+  private final int key;
+  private final double startX, startY, startHeading;
+
+  // Waypoints of route r at first[r] to first[r + 1] - 1, first[r] == first[r + 1] if none
+  private final int[] first = new int[ROUTES + 1];
+  private final float[] x;
+  private final float[] y;
+  private final boolean[] localize;
+
+  private RouteTable(int key, double startX, double startY, double startHeading, int points) {
+    this.key = key;
+    this.startX = startX;
+    this.startY = startY;
+    this.startHeading = startHeading;
+    x = new float[points];
+    y = new float[points];
+    localize = new boolean[points];
+  }
+
+  /**
+   * Plans all the routes of a game.
+   *
+   * @param planner planner of the game
+   * @param key hash of the game parameters (see Robot.hashParameters())
+   * @return the table, with no waypoints for the routes that could not be planned
+   */
+  public static RouteTable compute(RoutePlanner planner, int key) {
+    Route[] routes = new Route[ROUTES];
+    routes[TO_SEARCH_ZONE] = planner.planToSearchZone();
+    routes[HOME_FROM_LL] = planner.planHome(planner.getSearchZoneLLX(), planner.getSearchZoneLLY());
+    routes[HOME_FROM_UR] = planner.planHome(planner.getSearchZoneURX(), planner.getSearchZoneURY());
+    int points = 0;
+    for (int r = 0; r < ROUTES; r++) {
+      points += routes[r] == null ? 0 : routes[r].size();
+    }
+
+    RouteTable table = new RouteTable(key, planner.getStartX(), planner.getStartY(),
+        planner.getStartHeading(), points);
+    int i = 0;
+    for (int r = 0; r < ROUTES; r++) {
+      table.first[r] = i;
+      for (int j = 0; routes[r] != null && j < routes[r].size(); j++, i++) {
+        table.x[i] = (float) routes[r].getX(j);
+        table.y[i] = (float) routes[r].getY(j);
+        table.localize[i] = routes[r].isLocalization(j);
+      }
+    }
+    table.first[ROUTES] = i;
+    return table;
+  }
+
+  /**
+   * Loads a table saved for the same game parameters.
+   *
+   * @param fileName name of the file
+   * @param key hash of the game parameters
+   * @return the table, or null if there is no file or it was saved for other game parameters
+   * @throws IOException
+   */
+  public static RouteTable load(String fileName, int key) throws IOException {
+    File file = new File(fileName);
+    if (!file.exists()) {
+      return null;
+    }
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      if (in.readInt() != FORMAT || in.readInt() != key) {
+        return null;
+      }
+      double startX = in.readFloat();
+      double startY = in.readFloat();
+      double startHeading = in.readFloat();
+      int points = in.readInt();
+      RouteTable table = new RouteTable(key, startX, startY, startHeading, points);
+      for (int r = 0; r <= ROUTES; r++) {
+        table.first[r] = in.readInt();
+      }
+      for (int i = 0; i < points; i++) {
+        table.x[i] = in.readFloat();
+        table.y[i] = in.readFloat();
+        table.localize[i] = in.readBoolean();
+      }
+      return table;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Saves the table, to be loaded back with load() for the same game parameters.
+   *
+   * @param fileName name of the file
+   * @throws IOException
+   */
+  public void save(String fileName) throws IOException {
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(fileName));
+    try {
+      out.writeInt(FORMAT);
+      out.writeInt(key);
+      out.writeFloat((float) startX);
+      out.writeFloat((float) startY);
+      out.writeFloat((float) startHeading);
+      out.writeInt(x.length);
+      for (int r = 0; r <= ROUTES; r++) {
+        out.writeInt(first[r]);
+      }
+      for (int i = 0; i < x.length; i++) {
+        out.writeFloat(x[i]);
+        out.writeFloat(y[i]);
+        out.writeBoolean(localize[i]);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @param route TO_SEARCH_ZONE, HOME_FROM_LL or HOME_FROM_UR
+   * @return the route, or null if it could not be planned
+   */
+  public Route getRoute(int route) {
+    if (first[route] == first[route + 1]) {
+      return null;
+    }
+    Route result = new Route();
+    for (int i = first[route]; i < first[route + 1]; i++) {
+      result.add(x[i], y[i], localize[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Route back home from the corner of the search zone closest to a point.
+   *
+   * @param pointX x coordinate of the robot (in tiles)
+   * @param pointY y coordinate of the robot (in tiles)
+   * @return the route, or null if it could not be planned
+   */
+  public Route getRouteHome(double pointX, double pointY) {
+    double lowerLeft = distanceToStart(HOME_FROM_LL, pointX, pointY);
+    double upperRight = distanceToStart(HOME_FROM_UR, pointX, pointY);
+    return getRoute(lowerLeft <= upperRight ? HOME_FROM_LL : HOME_FROM_UR);
+  }
+
+  /**
+   * @return distance (in tiles) from a point to the first waypoint of a route, infinite if the
+   *         route could not be planned
+   */
+  private double distanceToStart(int route, double pointX, double pointY) {
+    if (first[route] == first[route + 1]) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return Math.hypot(pointX - x[first[route]], pointY - y[first[route]]);
+  }
+
+  /**
+   * @return hash of the game parameters the table was planned for
+   */
+  public int getKey() {
+    return key;
+  }
+
+  /**
+   * @return x coordinate (in tiles) of the grid intersection the robot starts from
+   */
+  public double getStartX() {
+    return startX;
+  }
+
+  /**
+   * @return y coordinate (in tiles) of the grid intersection the robot starts from
+   */
+  public double getStartY() {
+    return startY;
+  }
+
+  /**
+   * @return heading (in degrees) of the robot at the starting corner after the initial
+   *         localization
+   */
+  public double getStartHeading() {
+    return startHeading;
+  }
+
+}
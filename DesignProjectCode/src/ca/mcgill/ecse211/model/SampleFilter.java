@@ -0,0 +1,49 @@
+package ca.mcgill.ecse211.model;
+
+/**
+ * Streaming filter of sensor readings: it is handed every new reading, once, and returns the
+ * filtered value. Filters keep their state in primitive arrays allocated when they are created,
+ * so filtering a reading allocates nothing.
+ * 
+ * @author Carlo D'Angelo
+ */
+public abstract class SampleFilter {
+
+  /**
+   * Adds a reading.
+   * 
+   * @param sample new reading
+   * @return the filtered value
+   */
+  public abstract float filter(float sample);
+
+  /**
+   * Forgets the readings so far, e.g., before a new sweep.
+   */
+  public abstract void reset();
+
+  /**
+   * Chains filters: each reading goes through the first filter, its output through the second,
+   * and so on.
+   * 
+   * @param filters filters in the order they are applied
+   * @return the chain
+   */
+  public static SampleFilter chain(final SampleFilter... filters) {
+    return new SampleFilter() {
+      public float filter(float sample) {
+        for (int i = 0; i < filters.length; i++) {
+          sample = filters[i].filter(sample);
+        }
+        return sample;
+      }
+
+      public void reset() {
+        for (int i = 0; i < filters.length; i++) {
+          filters[i].reset();
+        }
+      }
+    };
+  }
+
+}
@@ -17,6 +17,8 @@ public class SearchZoneLocator {
 	private LightLocalizer lightLocalizer;
 	private Navigation navigator;
 	private Clamp clamp;
+	private RouteTable routeTable;
+	private RouteFollower routeFollower;
 	
 	/**
 	 * This is the default constructor of this class.
@@ -48,6 +50,16 @@ public class SearchZoneLocator {
 		this.lightLocalizer = lightLocalizer;
 		this.navigator= navigator;
 		this.clamp = clamp;
+		this.routeFollower = new RouteFollower(navigator, lightLocalizer);
+	}
+	
+	/**
+	 * Method that makes goToSearchZone() follow the planned route of the table instead of the
+	 * scripted one. The scripted route is still used if the table has no route.
+	 * @param routeTable routes of the game, or null for the scripted routes
+	 */
+	public void setRouteTable(RouteTable routeTable) {
+		this.routeTable = routeTable;
 	}
 	
 	/** 
@@ -56,6 +68,19 @@ public class SearchZoneLocator {
 	 * and where the tunnels are located.
 	 */
 	public void goToSearchZone(){
+		navigator.setPipelined(true); // queue the moves, lightLocalize() waits for them
+		navigator.setBuffering(true); // and merge the ones that can be
+		Route route = routeTable == null ? null : routeTable.getRoute(RouteTable.TO_SEARCH_ZONE);
+		if (route != null) {
+			odo.setXYT(routeTable.getStartX() * TILE_SIZE, routeTable.getStartY() * TILE_SIZE,
+					routeTable.getStartHeading());
+			clamp.grabCan();
+			routeFollower.follow(route);
+			navigator.setBuffering(false);
+			navigator.setPipelined(false);
+			clamp.offloadCan();
+			return;
+		}
 		// set new position and new angle after localization
 		// current position and current angle will depend on starting corner
 		switch(startingCorner){
@@ -685,6 +710,8 @@ public class SearchZoneLocator {
 		        System.exit(-1);
 		        break;
 		}
+		navigator.setBuffering(false);
+		navigator.setPipelined(false);
 		clamp.offloadCan();
 		
 	} 
@@ -0,0 +1,244 @@
+package ca.mcgill.ecse211.model;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import lejos.robotics.SampleProvider;
+
+/**
+ * Samples one sensor on its own thread and publishes the time-stamped samples in a ring buffer,
+ * so that no consumer calls fetchSample() itself and several consumers can share a sensor.
+ * <p>
+ * The thread reads the sensor as often as its period allows (the natural rate of the sensor) and
+ * is the only writer of the buffer. Consumers read the latest sample, a given sample or a window
+ * of the latest ones without blocking the writer, in the same way as the {@link PoseHistory}:
+ * they check after reading that the entries they used were not overwritten in the meantime, and
+ * read again if they were.
+ *
+ * @author Carlo D'Angelo
+ */
+public class SensorSampler implements Runnable {
+
+  private final SampleProvider provider;
+  private final String name;
+  private final int period;
+  private final int sampleSize;
+  private final float[] reading;
+
+  private final AtomicIntegerArray values; // float bits, sampleSize per entry
+  private final AtomicLongArray times;
+  private final int mask;
+  private final int capacity;
+
+  /**
+   * Number of samples published so far. Sample n is stored at index n & mask.
+   */
+  private volatile long count = 0;
+
+  /**
+   * This is the default constructor of this class.
+   *
+   * @param provider sample provider from which to fetch the sensor data
+   * @param name name of the sensor, for its thread
+   * @param period smallest time (ms) between two readings, 0 to read as fast as the sensor answers
+   * @param capacity number of samples kept (rounded up to a power of two)
+   */
+  public SensorSampler(SampleProvider provider, String name, int period, int capacity) {
+    this.provider = provider;
+    this.name = name;
+    this.period = period;
+    this.sampleSize = provider.sampleSize();
+    this.reading = new float[sampleSize];
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    this.capacity = size;
+    this.mask = size - 1;
+    this.values = new AtomicIntegerArray(size * sampleSize);
+    this.times = new AtomicLongArray(size);
+  }
+
+  /**
+   * Starts the sampling thread, and waits for its first sample so that the consumers always find
+   * one.
+   */
+  public synchronized void start() {
+    Thread thread = new Thread(this, name);
+    thread.setDaemon(true);
+    thread.start();
+    while (count == 0) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Method where the sampling runs.
+   */
+  public void run() {
+    while (true) {
+      long start = System.nanoTime();
+      provider.fetchSample(reading, 0);
+      publish(start);
+
+      long elapsed = (System.nanoTime() - start) / 1000000;
+      if (elapsed < period) {
+        try {
+          Thread.sleep(period - elapsed);
+        } catch (InterruptedException e) {
+          // there is nothing to be done
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the sample just read to the buffer.
+   *
+   * @param time System.nanoTime() of the reading
+   */
+  private void publish(long time) {
+    long n = count;
+    int base = (int) (n & mask) * sampleSize;
+    for (int i = 0; i < sampleSize; i++) {
+      values.set(base + i, Float.floatToRawIntBits(reading[i]));
+    }
+    times.set((int) (n & mask), time);
+    count = n + 1;
+    if (n == 0) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * @return number of values in a sample
+   */
+  public int sampleSize() {
+    return sampleSize;
+  }
+
+  /**
+   * @return number of samples kept
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return number of samples published so far; the newest is sample getCount() - 1
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Copies the newest sample.
+   *
+   * @param sample the array to store the sample, at least sampleSize() long
+   * @return System.nanoTime() of the reading, or 0 if there is no sample yet
+   */
+  public long getLatest(float[] sample) {
+    while (true) {
+      long end = count;
+      if (end == 0) {
+        return 0;
+      }
+      long time = getSample(end - 1, sample);
+      if (time != 0) {
+        return time;
+      }
+    }
+  }
+
+  /**
+   * Convenience for sensors with one value per sample.
+   *
+   * @return first value of the newest sample, 0 if there is no sample yet
+   */
+  public float getLatest() {
+    while (true) {
+      long end = count;
+      if (end == 0) {
+        return 0;
+      }
+      float value = Float.intBitsToFloat(values.get((int) ((end - 1) & mask) * sampleSize));
+      if (count - capacity + 1 <= end - 1) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * Copies a given sample, e.g., to go through all the samples since the last one read.
+   *
+   * @param n number of the sample, from 0 to getCount() - 1
+   * @param sample the array to store the sample, at least sampleSize() long
+   * @return System.nanoTime() of the reading, or 0 if the sample was already overwritten (or not
+   *         published yet)
+   */
+  public long getSample(long n, float[] sample) {
+    // The oldest slot may be the one being overwritten, so it is never used
+    if (n < 0 || n >= count || n < count - capacity + 1) {
+      return 0;
+    }
+    int base = (int) (n & mask) * sampleSize;
+    for (int i = 0; i < sampleSize; i++) {
+      sample[i] = Float.intBitsToFloat(values.get(base + i));
+    }
+    long time = times.get((int) (n & mask));
+    if (count - capacity + 1 > n) {
+      return 0; // overwritten while reading it
+    }
+    return time;
+  }
+
+  /**
+   * Copies the first value of the newest samples, oldest first.
+   *
+   * @param window the array to store the values, one per sample
+   * @param sampleTimes the array to store System.nanoTime() of the samples, or null
+   * @return number of samples copied, fewer than the length of window if there are not that many
+   */
+  public int getWindow(float[] window, long[] sampleTimes) {
+    while (true) {
+      long end = count;
+      int size = (int) Math.min(window.length, Math.min(end, capacity - 1));
+      long first = end - size;
+      for (int i = 0; i < size; i++) {
+        int index = (int) ((first + i) & mask);
+        window[i] = Float.intBitsToFloat(values.get(index * sampleSize));
+        if (sampleTimes != null) {
+          sampleTimes[i] = times.get(index);
+        }
+      }
+      if (count - capacity + 1 <= first) {
+        return size;
+      }
+    }
+  }
+
+  /**
+   * Rate the sensor was actually read at, over the samples in the buffer.
+   *
+   * @return samples per second, 0 if there are fewer than two samples
+   */
+  public double getRate() {
+    while (true) {
+      long end = count;
+      long first = Math.max(0, end - capacity + 1);
+      if (end - first < 2) {
+        return 0;
+      }
+      long elapsed = times.get((int) ((end - 1) & mask)) - times.get((int) (first & mask));
+      if (count - capacity + 1 > first) {
+        continue; // moved on while reading
+      }
+      return elapsed <= 0 ? 0 : (end - 1 - first) * 1e9 / elapsed;
+    }
+  }
+
+}
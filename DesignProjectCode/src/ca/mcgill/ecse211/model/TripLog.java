@@ -0,0 +1,149 @@
+package ca.mcgill.ecse211.model;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * This class collects the telemetry of one trip (to the search zone, the search and back home)
+ * and appends it to a CSV file on the brick after the trip, one line per trip, so that the runs
+ * can be compared with the correction log.
+ *
+ * @author Carlo D'Angelo
+ */
+public class TripLog {
+
+  /**
+   * Largest cross-track error (cm) of the straight drives (see HeadingController).
+   */
+  public static final int CROSS_TRACK_MAX = 0;
+
+  /**
+   * Root mean square cross-track error (cm) of the straight drives.
+   */
+  public static final int CROSS_TRACK_RMS = 1;
+
+  /**
+   * Number of cross-track error samples.
+   */
+  public static final int CROSS_TRACK_SAMPLES = 2;
+
+  /**
+   * Largest error (degrees) of the closed loop turns (see Navigation.setClosedLoopTurns()).
+   */
+  public static final int TURN_ERROR_MAX = 3;
+
+  /**
+   * Root mean square error (degrees) of the closed loop turns.
+   */
+  public static final int TURN_ERROR_RMS = 4;
+
+  /**
+   * Number of closed loop turns.
+   */
+  public static final int TURNS = 5;
+
+  /**
+   * Turning (degrees), distance (cm) and motions saved by the motion buffer on the route to the
+   * search zone (see MotionBuffer).
+   */
+  public static final int SEARCH_ZONE_SAVINGS = 6;
+
+  /**
+   * Same as SEARCH_ZONE_SAVINGS, on the route back home.
+   */
+  public static final int HOME_SAVINGS = 9;
+
+  private static final String[] COLUMN_NAMES = {"cross_track_max_cm", "cross_track_rms_cm",
+      "cross_track_samples", "turn_error_max_deg", "turn_error_rms_deg", "turns",
+      "search_zone_turn_saved_deg", "search_zone_distance_saved_cm", "search_zone_motions_saved",
+      "home_turn_saved_deg", "home_distance_saved_cm", "home_motions_saved"};
+
+  private final double[] values = new double[COLUMN_NAMES.length];
+  private final long startTime;
+  private int trips = 0;
+
+  /**
+   * This is the default constructor of this class.
+   */
+  public TripLog() {
+    startTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Sets a value of the current trip.
+   *
+   * @param column what the value is (e.g., CROSS_TRACK_MAX)
+   * @param value value
+   */
+  public synchronized void set(int column, double value) {
+    values[column] = value;
+  }
+
+  /**
+   * Records the cross-track error telemetry of a heading controller.
+   *
+   * @param controller heading controller of the straight drives
+   */
+  public synchronized void setCrossTrack(HeadingController controller) {
+    values[CROSS_TRACK_MAX] = controller.getMaxCrossTrack();
+    values[CROSS_TRACK_RMS] = controller.getRmsCrossTrack();
+    values[CROSS_TRACK_SAMPLES] = controller.getSampleCount();
+  }
+
+  /**
+   * Records the closed loop turn telemetry of a navigator.
+   *
+   * @param navigator navigator that made the turns
+   */
+  public synchronized void setTurnError(Navigation navigator) {
+    values[TURN_ERROR_MAX] = navigator.getMaxTurnError();
+    values[TURN_ERROR_RMS] = navigator.getRmsTurnError();
+    values[TURNS] = navigator.getTurnCount();
+  }
+
+  /**
+   * Records the savings of a motion buffer over a route. They are reset when the next route
+   * turns buffering on, so this is called at the end of each route.
+   *
+   * @param route SEARCH_ZONE_SAVINGS or HOME_SAVINGS
+   * @param buffer motion buffer of the navigator
+   */
+  public synchronized void setSavings(int route, MotionBuffer buffer) {
+    values[route] = buffer.getTurnSaved();
+    values[route + 1] = buffer.getDistanceSaved();
+    values[route + 2] = buffer.getMotionsSaved();
+  }
+
+  /**
+   * Appends the current trip to a CSV file, with a header if the file is new, and clears the
+   * values for the next trip.
+   *
+   * @param fileName name of the file to append to
+   * @throws IOException
+   */
+  public synchronized void append(String fileName) throws IOException {
+    boolean header = new File(fileName).length() == 0;
+    PrintWriter out = new PrintWriter(new FileWriter(fileName, true));
+    try {
+      if (header) {
+        out.print("trip,time_ms");
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+          out.print("," + COLUMN_NAMES[i]);
+        }
+        out.println();
+      }
+      out.print(trips + "," + (System.currentTimeMillis() - startTime));
+      for (int i = 0; i < values.length; i++) {
+        out.print("," + values[i]);
+        values[i] = 0;
+      }
+      out.println();
+    } finally {
+      out.close();
+    }
+    trips++;
+  }
+
+}
@@ -1,8 +1,5 @@
 package ca.mcgill.ecse211.model;
 
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.robotics.SampleProvider;
-
 /**
  * This class handles the ultrasonic localization of the robot.
  * 
@@ -28,69 +25,117 @@ public class UltrasonicLocalizer {
 	private static final double NOISE_MARGIN = 5.00;
 
 	private static final double TURN_ERROR = 18;
+	
+	/**
+	 * Readings of the ultrasonic sensor the median is taken over. The median delays both
+	 * edges by the same amount in opposite directions, so their average is unaffected.
+	 */
+	private static final int MEDIAN_LENGTH = 3;
+	
+	/**
+	 * Number of "no echo" readings in a row that are ignored.
+	 */
+	private static final int MAX_NO_ECHO = 3;
+	
+	/**
+	 * Distance (cm) between the ultrasonic sensor and the axis of rotation of the robot.
+	 */
+	private static final double US_OFFSET = 7.0;
+	
+	/**
+	 * Readings kept for the scan of wallFit(), more than one turn at ROTATION_SPEED gives.
+	 */
+	private static final int SCAN_CAPACITY = 512;
+	
+	/**
+	 * Time (ms) between two reads of the new ultrasonic samples during the scan.
+	 */
+	private static final int SCAN_POLL_PERIOD = 10;
+	
+	/**
+	 * Largest root mean square distance (cm) of the fitted points to the walls for the wall fit
+	 * to be used. Sensor noise alone gives under 1 cm; echoes off objects near the corner, kept
+	 * by the fit up to its 3 cm gate, give more.
+	 */
+	private static final double MAX_FIT_RMS = 2.0;
+	
+	/**
+	 * Smallest part of the readings of the scan that the walls must be fitted to for the wall fit
+	 * to be used. About 40% of a turn is within WallFit's sectors around the walls.
+	 */
+	private static final double MIN_FIT_FRACTION = 0.2;
   
 	private final double RADIUS = Robot.WHEEL_RAD;
 	private final double TRACK = Robot.TRACK;
  
 	private Odometer odo;
-	private SampleProvider usDistance;
-	private float[] usData;
-	private EV3LargeRegulatedMotor leftMotor, rightMotor;
+	private FilteredSensor usReader;
+	private SensorSampler usSampler;
+	private final float[] usData;
+	private final float[] scanHeadings = new float[SCAN_CAPACITY];
+	private final float[] scanDistances = new float[SCAN_CAPACITY];
+	private final WallFit wallFit = new WallFit();
+	private long nextSample; // number of the next ultrasonic sample to add to the scan
+	private MotorPair wheels;
+	private final double[] position = new double[3];
+	private long sampleTime; // System.nanoTime() of the last ultrasonic sensor reading
 	
 	/**
 	 * This is the default constructor of this class.
-	 * @param leftMotor left motor of robot
-	 * @param rightMotor right motor of robot
-	 * @param usDistance sample provider from which to fetch ultrasonic sensor data
-	 * @param usData array in which to store the ultrasonic sensor data
+	 * @param wheels motors of the wheels of robot
+	 * @param usSampler sampler of the ultrasonic sensor
 	 * @throws OdometerExceptions
 	 */
-	public UltrasonicLocalizer(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor,
-		SampleProvider usDistance, float[] usData) throws OdometerExceptions {
+	public UltrasonicLocalizer(MotorPair wheels, SensorSampler usSampler)
+		throws OdometerExceptions {
 		odo = Odometer.getOdometer();
-		this.leftMotor = leftMotor;
-		this.rightMotor = rightMotor;
-		this.usDistance = usDistance;
-		this.usData = usData;
+		this.wheels = wheels;
+		this.usSampler = usSampler;
+		this.usData = new float[usSampler.sampleSize()];
+		this.usReader = new FilteredSensor(usSampler, SampleFilter.chain(
+				new NoEchoFilter(MAX_NO_ECHO), new MedianFilter(MEDIAN_LENGTH)));
 
-		leftMotor.setSpeed(ROTATION_SPEED);
-		rightMotor.setSpeed(ROTATION_SPEED);
+		wheels.setSpeed(ROTATION_SPEED);
+	}
+	
+	/**
+	 * Method that replaces the filter of the ultrasonic sensor readings.
+	 * @param filter filter of the readings (in m)
+	 */
+	public void setFilter(SampleFilter filter) {
+		usReader.setFilter(filter);
 	}
 	
 	/**
 	 * Method that allows the robot to perform falling edge localization.
 	 */
 	public void fallingEdge() {
+		usReader.reset();
 
 		double angleA, angleB, turningAngle = 0;
 
 		// Get first angle
 		while (readUSDistance() < CRITICAL_DISTANCE + NOISE_MARGIN) {
-			leftMotor.forward();
-			rightMotor.backward();
+			wheels.turnClockwise();
 		}
 		
 		while (readUSDistance() > CRITICAL_DISTANCE) {
-			leftMotor.forward();
-			rightMotor.backward();
+			wheels.turnClockwise();
 		}
 		
-		angleA = odo.getXYT()[2];
+		angleA = headingAtSample();
 
 		// Get second angle
 		while (readUSDistance() < CRITICAL_DISTANCE + NOISE_MARGIN) {
-			leftMotor.backward();
-			rightMotor.forward();
+			wheels.turnCounterclockwise();
 		}
 
 		while (readUSDistance() > CRITICAL_DISTANCE) {
-			leftMotor.backward();
-			rightMotor.forward();
+			wheels.turnCounterclockwise();
 		}
-		angleB = odo.getXYT()[2];
+		angleB = headingAtSample();
 
-		leftMotor.stop(true);
-		rightMotor.stop();
+		wheels.stop();
 
 		// Calculation of angle that makes robot's heading face 0 degrees
 		if (angleA < angleB) {
@@ -100,18 +145,94 @@ public class UltrasonicLocalizer {
 			turningAngle = -angleB + (angleA + angleB) / 2 - 45 + TURN_ERROR;
 		}
 
-		leftMotor.rotate(Navigation.convertAngle(RADIUS, TRACK, turningAngle), true);
-		rightMotor.rotate(-Navigation.convertAngle(RADIUS, TRACK, turningAngle), false);
-		odo.setTheta(0.0);
+		wheels.rotate(Navigation.convertAngle(RADIUS, TRACK, turningAngle),
+			-Navigation.convertAngle(RADIUS, TRACK, turningAngle), false);
+		odo.correctTheta(0.0, CorrectionLog.ULTRASONIC_LOCALIZATION);
 
 	}
+	
+	/**
+	 * Method that localizes the robot in one turn: it records the ultrasonic readings of a full
+	 * turn in place and fits the two walls of the corner to them (see WallFit). Unlike
+	 * fallingEdge(), it corrects x and y as well as theta, relative to the grid intersection
+	 * (0,0) at the upper right of the corner tile, and leaves the robot where the turn ended.
+	 * @return false if the walls could not be fitted, or too few readings were close to them, the
+	 *         odometer is then left as it was
+	 */
+	public boolean wallFit() {
+		int rotation = Navigation.convertAngle(RADIUS, TRACK, 360);
+		int count = 0;
+		nextSample = usSampler.getCount();
+		
+		wheels.setSpeed(ROTATION_SPEED);
+		wheels.rotate(rotation, -rotation, true);
+		while (wheels.isMoving()) {
+			count = recordScan(count);
+			try {
+				Thread.sleep(SCAN_POLL_PERIOD);
+			} catch (InterruptedException e) {
+				// there is nothing to be done
+			}
+		}
+		count = recordScan(count);
+		wheels.stop();
+		
+		if (!wallFit.fit(scanHeadings, scanDistances, count) || wallFit.getRms() > MAX_FIT_RMS
+				|| wallFit.getPoints() < MIN_FIT_FRACTION * count) {
+			return false;
+		}
+		
+		// the normal of the south wall is at 180 degrees on the field
+		odo.getXYT(position);
+		double theta = position[2] + 180 - wallFit.getSouthHeading();
+		odo.correctXYT(wallFit.getWestDistance() - Navigation.TILE_SIZE,
+				wallFit.getSouthDistance() - Navigation.TILE_SIZE, (theta % 360 + 360) % 360,
+				CorrectionLog.ULTRASONIC_LOCALIZATION);
+		return true;
+	}
+	
+	/**
+	 * Method that adds the ultrasonic samples published since the last call to the scan, with the
+	 * heading the robot had when each was read.
+	 * @param count number of readings in the scan
+	 * @return number of readings in the scan after adding the samples
+	 */
+	private int recordScan(int count) {
+		long end = usSampler.getCount();
+		for (; nextSample < end && count < SCAN_CAPACITY; nextSample++) {
+			long time = usSampler.getSample(nextSample, usData);
+			if (time == 0) {
+				continue; // overwritten
+			}
+			if (!odo.poseAt(time, position)) {
+				odo.getXYT(position);
+			}
+			scanHeadings[count] = (float) position[2];
+			scanDistances[count] = (float) (usData[0] * 100 + US_OFFSET);
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Method that returns the heading the robot had when the last ultrasonic reading was taken.
+	 * @return heading (degrees) at the time of the last reading
+	 */
+	private double headingAtSample() {
+		if (!odo.poseAt(sampleTime, position)) {
+			odo.getXYT(position);
+		}
+		return position[2];
+	}
+
 	/**
-	 * Method that fetches data from the ultrasonic sensor.
+	 * Method that reads the filtered data from the ultrasonic sensor.
 	 * @return distance (cm) from the wall
 	 */
-	private int readUSDistance() {
-		usDistance.fetchSample(usData, 0);
-		return (int) (usData[0] * 100);
+	private double readUSDistance() {
+		double distance = usReader.read() * 100;
+		sampleTime = usReader.getTime();
+		return distance;
 	}
 
 }
\ No newline at end of file
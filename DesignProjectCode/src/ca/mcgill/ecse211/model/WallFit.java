@@ -0,0 +1,273 @@
+package ca.mcgill.ecse211.model;
+
+import java.util.Arrays;
+
+/**
+ * Fits the two walls of the starting corner to a 360 degree scan of the ultrasonic sensor, taken
+ * while the robot spins in place.
+ * <p>
+ * The corner is at the lower left of the robot: the south wall, then the west wall 90 degrees
+ * clockwise from it. The readings are in the order of the turn, and the closest median of three
+ * consecutive readings (so that a single spurious echo is ignored) gives a first estimate of the
+ * normal of one of the walls, and the closer of the two readings 90 degrees away on either side
+ * tells which one. The readings within WALL_SECTOR of each normal are then fitted with two
+ * perpendicular lines by least squares: the points of the west wall are rotated by -90 degrees,
+ * which makes both walls parallel, and the direction of the lines is the principal axis of their
+ * summed scatter. The readings far from the median of their neighbours or from the walls through
+ * the closest readings are left out of the fit, and a second fit leaves out the points too far from
+ * the first one (echoes off the corner or off the objects around).
+ *
+ * @author Carlo D'Angelo
+ */
+public class WallFit {
+
+  /**
+   * Readings farther than this (in cm) are not of the corner walls.
+   */
+  private static final double MAX_DISTANCE = 2 * Navigation.TILE_SIZE;
+
+  /**
+   * Readings within this angle (in degrees) of the normal of a wall are fitted to it. The sensor
+   * does not see a wall much farther from its normal.
+   */
+  private static final double WALL_SECTOR = 35;
+
+  /**
+   * Points farther than this (in cm) from the first fit are left out of the second one.
+   */
+  private static final double MAX_RESIDUAL = 3;
+
+  /**
+   * Points farther than this (in cm) from the walls through the closest readings are left out of
+   * the first fit. It allows for the error of the heading of the closest readings.
+   */
+  private static final double FIRST_RESIDUAL = 2 * MAX_RESIDUAL;
+
+  /**
+   * Fewest points of each wall for a fit.
+   */
+  private static final int MIN_POINTS = 5;
+
+  private double southHeading;
+  private double southDistance;
+  private double westDistance;
+  private double rms;
+  private int points;
+
+  // Sums of a fit, for the south and the west wall: count, x, y, xx, yy, xy
+  private final double[] south = new double[6];
+  private final double[] west = new double[6];
+
+  /**
+   * Fits the walls to a scan.
+   *
+   * @param headings heading (in degrees) of each reading
+   * @param distances distance (in cm) from the axis of rotation of the robot to the wall, infinite
+   *        or NaN for no echo
+   * @param count number of readings
+   * @return false if the scan does not show two walls
+   */
+  public boolean fit(float[] headings, float[] distances, int count) {
+    int closest = -1;
+    double closestDistance = MAX_DISTANCE;
+    for (int i = 0; i < count; i++) {
+      double distance = median(distances, count, i);
+      if (distance <= closestDistance) {
+        closest = i;
+        closestDistance = distance;
+      }
+    }
+    if (closest < 0) {
+      return false;
+    }
+    double normal = headings[closest];
+    double clockwise = closestWithin(headings, distances, count, normal + 90);
+    double counterclockwise = closestWithin(headings, distances, count, normal - 90);
+    if (Double.isInfinite(clockwise) && Double.isInfinite(counterclockwise)) {
+      return false;
+    }
+    // the closest reading is of the south wall if the other wall is clockwise from it
+    if (clockwise <= counterclockwise) {
+      southHeading = normal;
+      southDistance = closestDistance;
+      westDistance = clockwise;
+    } else {
+      southHeading = normal - 90;
+      southDistance = counterclockwise;
+      westDistance = closestDistance;
+    }
+
+    if (!fitOnce(headings, distances, count, FIRST_RESIDUAL)
+        || !fitOnce(headings, distances, count, MAX_RESIDUAL)) {
+      return false;
+    }
+
+    double squares = 0;
+    points = 0;
+    for (int i = 0; i < count; i++) {
+      double residual = residual(headings[i], distances[i]);
+      if (Math.abs(residual) <= MAX_RESIDUAL) {
+        squares += residual * residual;
+        points++;
+      }
+    }
+    rms = Math.sqrt(squares / points);
+    southHeading = (southHeading % 360 + 360) % 360;
+    return true;
+  }
+
+  /**
+   * @return heading (in degrees, as in the scan) of the normal of the south wall, i.e., the heading
+   *         that is 180 degrees on the field
+   */
+  public double getSouthHeading() {
+    return southHeading;
+  }
+
+  /**
+   * @return distance (in cm) from the axis of rotation of the robot to the south wall
+   */
+  public double getSouthDistance() {
+    return southDistance;
+  }
+
+  /**
+   * @return distance (in cm) from the axis of rotation of the robot to the west wall
+   */
+  public double getWestDistance() {
+    return westDistance;
+  }
+
+  /**
+   * @return root mean square distance (in cm) of the fitted points to the walls
+   */
+  public double getRms() {
+    return rms;
+  }
+
+  /**
+   * @return number of points the walls were fitted to
+   */
+  public int getPoints() {
+    return points;
+  }
+
+  /**
+   * Fits the two walls around the current estimate of the heading of the south wall.
+   *
+   * @param maxResidual points farther than this (in cm) from the current fit are left out
+   * @return false if a wall has too few points
+   */
+  private boolean fitOnce(float[] headings, float[] distances, int count, double maxResidual) {
+    Arrays.fill(south, 0);
+    Arrays.fill(west, 0);
+    for (int i = 0; i < count; i++) {
+      double distance = distances[i];
+      if (!(distance <= MAX_DISTANCE)
+          || Math.abs(distance - median(distances, count, i)) > MAX_RESIDUAL) {
+        continue; // no echo, beyond the walls or a spurious echo
+      }
+      if (Math.abs(residual(headings[i], distance)) > maxResidual) {
+        continue;
+      }
+      double offSouth = Math.IEEEremainder(headings[i] - southHeading, 360);
+      if (Math.abs(offSouth) <= WALL_SECTOR) {
+        add(south, headings[i], distance);
+      } else if (Math.abs(offSouth - 90) <= WALL_SECTOR) {
+        add(west, headings[i] - 90, distance);
+      }
+    }
+    if (south[0] < MIN_POINTS || west[0] < MIN_POINTS) {
+      return false;
+    }
+
+    // scatter of both walls about their own centroid
+    double sxx = scatter(south, 3, 1, 1) + scatter(west, 3, 1, 1);
+    double syy = scatter(south, 4, 2, 2) + scatter(west, 4, 2, 2);
+    double sxy = scatter(south, 5, 1, 2) + scatter(west, 5, 1, 2);
+    double direction = 0.5 * Math.atan2(2 * sxy, sxx - syy); // of the walls, from the x axis
+    double normalX = -Math.sin(direction);
+    double normalY = Math.cos(direction);
+    double heading = Math.toDegrees(Math.atan2(normalX, normalY));
+    if (Math.abs(Math.IEEEremainder(heading - southHeading, 360)) > 90) {
+      heading += 180;
+      normalX = -normalX;
+      normalY = -normalY;
+    }
+    southHeading = heading;
+    southDistance = (south[1] * normalX + south[2] * normalY) / south[0];
+    westDistance = (west[1] * normalX + west[2] * normalY) / west[0];
+    return true;
+  }
+
+  /**
+   * @return distance (in cm) of a point of the scan to the wall it is fitted to, infinite if it is
+   *         not near a wall
+   */
+  private double residual(double heading, double distance) {
+    if (!(distance <= MAX_DISTANCE)) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double offSouth = Math.IEEEremainder(heading - southHeading, 360);
+    if (Math.abs(offSouth) <= WALL_SECTOR) {
+      return distance * Math.cos(Math.toRadians(offSouth)) - southDistance;
+    } else if (Math.abs(offSouth - 90) <= WALL_SECTOR) {
+      return distance * Math.cos(Math.toRadians(offSouth - 90)) - westDistance;
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * @return the shortest median of three readings within WALL_SECTOR / 2 of a heading, infinite
+   *         if none
+   */
+  private static double closestWithin(float[] headings, float[] distances, int count,
+      double heading) {
+    double closest = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      double distance = median(distances, count, i);
+      if (distance <= MAX_DISTANCE
+          && Math.abs(Math.IEEEremainder(headings[i] - heading, 360)) <= WALL_SECTOR / 2) {
+        closest = Math.min(closest, distance);
+      }
+    }
+    return closest;
+  }
+
+  /**
+   * @return median of a reading and the two next to it in the scan, which is one full turn (the
+   *         first and the last readings are next to each other), NaN counted as no echo
+   */
+  private static double median(float[] distances, int count, int i) {
+    double a = valid(distances[i > 0 ? i - 1 : count - 1]);
+    double b = valid(distances[i]);
+    double c = valid(distances[i < count - 1 ? i + 1 : 0]);
+    return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+  }
+
+  private static double valid(float distance) {
+    return distance == distance ? distance : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Adds a point of the scan to the sums of a wall.
+   */
+  private static void add(double[] sums, double heading, double distance) {
+    double x = distance * Math.sin(Math.toRadians(heading));
+    double y = distance * Math.cos(Math.toRadians(heading));
+    sums[0]++;
+    sums[1] += x;
+    sums[2] += y;
+    sums[3] += x * x;
+    sums[4] += y * y;
+    sums[5] += x * y;
+  }
+
+  /**
+   * @return a sum of products about the centroid, from the sums of a wall
+   */
+  private static double scatter(double[] sums, int product, int a, int b) {
+    return sums[product] - sums[a] * sums[b] / sums[0];
+  }
+
+}